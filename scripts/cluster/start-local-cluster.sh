@@ -0,0 +1,42 @@
+#!/bin/bash
+
+# 启动本地Redis Cluster(3主3从, 端口7000-7005)
+# 用法: ./start-local-cluster.sh, 然后以cluster profile启动应用:
+#   java -jar target/circular-list-1.0.0.jar --spring.profiles.active=cluster
+
+set -e
+
+REDIS_SERVER="${REDIS_SERVER:-redis-server}"
+REDIS_CLI="${REDIS_CLI:-redis-cli}"
+CLUSTER_DIR="${CLUSTER_DIR:-/tmp/circular-list-cluster}"
+PORTS="7000 7001 7002 7003 7004 7005"
+
+NODES=""
+for PORT in $PORTS; do
+    mkdir -p "${CLUSTER_DIR}/${PORT}"
+    "$REDIS_SERVER" --port "$PORT" \
+        --cluster-enabled yes \
+        --cluster-config-file "nodes-${PORT}.conf" \
+        --cluster-node-timeout 5000 \
+        --dir "${CLUSTER_DIR}/${PORT}" \
+        --appendonly no --save "" \
+        --daemonize yes \
+        --logfile "${CLUSTER_DIR}/${PORT}/redis.log"
+    NODES="${NODES} 127.0.0.1:${PORT}"
+done
+
+# 等待所有节点启动
+for PORT in $PORTS; do
+    until "$REDIS_CLI" -p "$PORT" ping > /dev/null 2>&1; do
+        sleep 0.2
+    done
+done
+
+# 已经组建过集群时跳过
+if "$REDIS_CLI" -p 7000 cluster info | grep -q "cluster_state:ok"; then
+    echo "集群已在运行"
+else
+    "$REDIS_CLI" --cluster create $NODES --cluster-replicas 1 --cluster-yes
+fi
+
+"$REDIS_CLI" -p 7000 cluster nodes
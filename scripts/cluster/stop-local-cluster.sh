@@ -0,0 +1,14 @@
+#!/bin/bash
+
+# 停止本地Redis Cluster并清理数据目录
+
+REDIS_CLI="${REDIS_CLI:-redis-cli}"
+CLUSTER_DIR="${CLUSTER_DIR:-/tmp/circular-list-cluster}"
+PORTS="7000 7001 7002 7003 7004 7005"
+
+for PORT in $PORTS; do
+    "$REDIS_CLI" -p "$PORT" shutdown nosave > /dev/null 2>&1 || true
+done
+
+rm -rf "$CLUSTER_DIR"
+echo "集群已停止"
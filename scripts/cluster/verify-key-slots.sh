@@ -0,0 +1,41 @@
+#!/bin/bash
+
+# 检查每个逻辑列表的所有Key(列表、计数器、时间桶、快照锁等)是否落在同一个slot
+# 先以cluster profile启动应用并执行 scripts/test/test-circular-list.sh 产生数据
+# 旧版本遗留的 circular:registry:namespaces 没有hash tag, 已由 circular:registry:{registry}:namespaces 取代,
+# 新版本写入登记时会重新填充, 可直接删除
+
+REDIS_CLI="${REDIS_CLI:-redis-cli}"
+PORTS="7000 7001 7002 7003 7004 7005"
+
+declare -A TAG_SLOTS
+FAILED=0
+
+for PORT in $PORTS; do
+    # 只扫描主节点
+    if ! "$REDIS_CLI" -p "$PORT" role | head -1 | grep -q master; then
+        continue
+    fi
+
+    while read -r KEY; do
+        [ -z "$KEY" ] && continue
+        TAG=$(echo "$KEY" | sed -n 's/[^{]*{\([^}]*\)}.*/\1/p')
+        SLOT=$("$REDIS_CLI" -p "$PORT" cluster keyslot "$KEY")
+        echo "${SLOT} ${PORT} ${KEY}"
+
+        if [ -z "$TAG" ]; then
+            echo "  缺少hash tag: ${KEY}"
+            FAILED=1
+        elif [ -n "${TAG_SLOTS[$TAG]}" ] && [ "${TAG_SLOTS[$TAG]}" != "$SLOT" ]; then
+            echo "  slot不一致: tag=${TAG}, ${TAG_SLOTS[$TAG]} != ${SLOT}"
+            FAILED=1
+        fi
+        TAG_SLOTS[$TAG]=$SLOT
+    done < <("$REDIS_CLI" -p "$PORT" --scan --pattern 'circular:*')
+done
+
+if [ "$FAILED" -eq 0 ]; then
+    echo "所有列表的Key都在各自的同一个slot中"
+else
+    exit 1
+fi
@@ -0,0 +1,74 @@
+#!/bin/bash
+
+# 对比平台线程和虚拟线程两种模式下的阻塞并发能力
+# 向空资源池发起并发的 /pool/acquire 请求, 每个请求都会在BRPOPLPUSH上阻塞block-timeout秒,
+# 平台线程模式下并发数超过Tomcat线程数(默认200)的请求需要排队, 虚拟线程模式下所有请求同时阻塞
+# 容量对比: 在一个阻塞周期内(block-timeout + 1秒)完成的请求数即同时阻塞的请求数,
+# 同时记录运行期间JVM的峰值线程数和峰值常驻内存
+#
+# 用法: JAVA_HOME=/path/to/jdk21 ./compare-thread-modes.sh [并发数]
+# 需要先执行 mvn package 并启动本地Redis
+
+set -e
+
+CONCURRENCY="${1:-300}"
+PORT="${PORT:-9015}"
+BLOCK_TIMEOUT="${BLOCK_TIMEOUT:-5}"
+JAVA="${JAVA_HOME:+$JAVA_HOME/bin/}java"
+JAR=$(ls target/circular-list-*.jar | head -1)
+BASE_URL="http://localhost:${PORT}/api/circular"
+
+run_mode() {
+    local MODE=$1
+    local VIRTUAL=$2
+
+    if curl -s "${BASE_URL}/list/size?listName=warmup" > /dev/null 2>&1; then
+        echo "端口${PORT}已被占用, 请先停止已有实例"
+        exit 1
+    fi
+
+    "$JAVA" -jar "$JAR" --server.port="$PORT" \
+        --circular-list.virtual-threads.enabled="$VIRTUAL" \
+        --circular-list.blocking-pool.max-active="$CONCURRENCY" \
+        --circular-list.blocking-pool.max-wait=60s \
+        --circular-list.block-timeout="$BLOCK_TIMEOUT" \
+        --logging.level.com.example.circularlist=warn \
+        --logging.level.org.springframework.data.redis=warn > "/tmp/compare-${MODE}.log" 2>&1 &
+    local PID=$!
+
+    until curl -s "${BASE_URL}/list/size?listName=warmup" > /dev/null 2>&1; do
+        sleep 0.5
+    done
+    curl -s -X DELETE "${BASE_URL}/list/clear?listName=compare-empty" > /dev/null
+
+    # 请求期间每100毫秒采样一次线程数和常驻内存
+    local SAMPLES="/tmp/compare-${MODE}.samples"
+    : > "$SAMPLES"
+    (while kill -0 "$PID" 2> /dev/null; do
+        awk '/^Threads:/ {t=$2} /^VmRSS:/ {r=$2} END {print t, r}' "/proc/$PID/status" >> "$SAMPLES" 2> /dev/null
+        sleep 0.1
+    done) &
+    local SAMPLER=$!
+
+    # 每个请求的耗时, 排序后取最小值、中位数和最大值
+    local TIMES=$(seq 1 "$CONCURRENCY" | xargs -P "$CONCURRENCY" -I{} \
+        curl -s -o /dev/null -w "%{http_code} %{time_total}\n" "${BASE_URL}/pool/acquire?poolName=compare-empty")
+    local OK=$(echo "$TIMES" | grep -c "^200" || true)
+    local STATS=$(echo "$TIMES" | awk '{print $2}' | sort -n | awk '{t[NR]=$1} END {printf "min=%.2fs p50=%.2fs max=%.2fs", t[1], t[int((NR+1)/2)], t[NR]}')
+    local CAPACITY=$(echo "$TIMES" | awk -v limit="$((BLOCK_TIMEOUT + 1))" '$1 == 200 && $2 <= limit' | wc -l)
+
+    kill "$SAMPLER" 2> /dev/null || true
+    local PEAK=$(awk '$1 > t {t=$1} $2 > r {r=$2} END {printf "threads=%d rss=%dMB", t, r / 1024}' "$SAMPLES")
+
+    kill "$PID"
+    wait "$PID" 2> /dev/null || true
+
+    printf "%-10s 并发=%-6s 成功=%-6s 同时阻塞=%-6s %s %s\n" "$MODE" "$CONCURRENCY" "$OK" "$CAPACITY" "$STATS" "$PEAK"
+}
+
+echo "=========================================="
+echo "线程模式对比(每个请求阻塞在空列表上)"
+echo "=========================================="
+
+run_mode "platform" false
+run_mode "virtual" true
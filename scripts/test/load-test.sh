@@ -0,0 +1,17 @@
+#!/bin/bash
+
+# HTTP压测: 按开环到达率压测本地实例, 输出吞吐量和p50/p99/p999延迟(协同遗漏修正)
+# 结果写入 target/loadtest/ 下的JSON和CSV文件, 用于不同版本之间对比
+#
+# 用法: ./scripts/test/load-test.sh [--rate=200] [--duration=30] [--warmup=5] [--concurrency=64]
+#                                  [--mix=workers-next:30,tasks-assign:10,ads-next:40,ads-batch:10,pool-acquire:10]
+#                                  [--base-url=http://localhost:9005/api/circular] [--seed=42] [--setup=true]
+# 需要先启动本地Redis和应用(java -jar target/circular-list-*.jar)
+
+set -e
+
+cd "$(dirname "$0")/../.."
+
+mvn -B -q test-compile
+
+java -cp target/test-classes com.example.circularlist.loadtest.LoadGenerator "$@"
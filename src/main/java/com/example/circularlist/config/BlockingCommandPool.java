@@ -0,0 +1,171 @@
+package com.example.circularlist.config;
+
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.support.ConnectionPoolSupport;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 阻塞命令连接池
+ * 非阻塞命令走共享的多路复用连接, BRPOPLPUSH、XREADGROUP BLOCK等阻塞命令会长时间占用连接,
+ * 单独使用这个连接池, 避免和亚毫秒级命令争抢连接; 借用等待时间作为监控指标暴露
+ @author lk
+ @create 2026/10/19-13:10
+ */
+@Slf4j
+@Component
+public class BlockingCommandPool implements DisposableBean {
+
+    @Autowired
+    private LettuceConnectionFactory connectionFactory;
+
+    @Value("${circular-list.blocking-pool.max-active:20}")
+    private int maxActive;
+
+    @Value("${circular-list.blocking-pool.max-idle:10}")
+    private int maxIdle;
+
+    @Value("${circular-list.blocking-pool.min-idle:0}")
+    private int minIdle;
+
+    @Value("${circular-list.blocking-pool.max-wait:2000ms}")
+    private Duration maxWait;
+
+    @Value("${spring.redis.timeout:5000ms}")
+    private Duration commandTimeout;
+
+    private GenericObjectPool<StatefulConnection<byte[], byte[]>> pool;
+
+    private final AtomicLong borrowWaitNanos = new AtomicLong();
+
+    private final AtomicLong borrowFailures = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        GenericObjectPoolConfig<StatefulConnection<byte[], byte[]>> config = new GenericObjectPoolConfig<>();
+        config.setMaxTotal(maxActive);
+        config.setMaxIdle(maxIdle);
+        config.setMinIdle(minIdle);
+        config.setMaxWait(maxWait);
+        config.setTestOnBorrow(false);
+
+        //连接在第一次借用时才建立, Redis未启动时应用也能正常启动
+        pool = ConnectionPoolSupport.createGenericObjectPool(this::connect, config);
+
+        log.info("阻塞命令连接池已创建: maxActive={}, maxIdle={}, minIdle={}, maxWait={}", maxActive, maxIdle, minIdle, maxWait);
+    }
+
+    /**
+     * 借用连接执行阻塞命令
+     * 连接的命令超时时间会临时加上阻塞时间, 阻塞本身不会被判为超时
+     * @param blockTimeout 命令的阻塞时间
+     * @param action 要执行的命令
+     * @return 命令结果
+     */
+    public <R> R execute(Duration blockTimeout, Function<RedisClusterCommands<byte[], byte[]>, R> action) {
+        long start = System.nanoTime();
+        StatefulConnection<byte[], byte[]> connection;
+
+        try {
+            connection = pool.borrowObject();
+        } catch (Exception e) {
+            borrowFailures.incrementAndGet();
+            throw new IllegalStateException("获取阻塞命令连接失败", e);
+        } finally {
+            borrowWaitNanos.addAndGet(System.nanoTime() - start);
+        }
+
+        R result;
+        try {
+            connection.setTimeout(commandTimeout.plus(blockTimeout));
+            result = action.apply(commandsOf(connection));
+        } catch (RuntimeException e) {
+            // 超时或连接异常后连接上可能还有未读完的回复, 不能再还回池里复用
+            invalidate(connection);
+            throw e;
+        }
+
+        pool.returnObject(connection);
+        return result;
+    }
+
+    private void invalidate(StatefulConnection<byte[], byte[]> connection) {
+        try {
+            pool.invalidateObject(connection);
+        } catch (Exception e) {
+            log.warn("销毁阻塞命令连接失败", e);
+        }
+    }
+
+    /**
+     * 预先建立minIdle个连接
+     */
+    public void prepare() throws Exception {
+        pool.preparePool();
+    }
+
+    /**
+     * 连接池监控指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("active", pool.getNumActive());
+        stats.put("idle", pool.getNumIdle());
+        stats.put("waiters", pool.getNumWaiters());
+        stats.put("maxActive", pool.getMaxTotal());
+        stats.put("borrowed", pool.getBorrowedCount());
+        stats.put("created", pool.getCreatedCount());
+        stats.put("borrowFailures", borrowFailures.get());
+        stats.put("meanBorrowWaitMillis", pool.getMeanBorrowWaitTimeMillis());
+        stats.put("maxBorrowWaitMillis", pool.getMaxBorrowWaitTimeMillis());
+        stats.put("totalBorrowWaitMillis", borrowWaitNanos.get() / 1_000_000);
+        return stats;
+    }
+
+    @Override
+    public void destroy() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    /**
+     * 复用连接工厂的客户端(共享事件循环和集群拓扑), 单机和集群都支持
+     */
+    private StatefulConnection<byte[], byte[]> connect() {
+        AbstractRedisClient client = connectionFactory.getRequiredNativeClient();
+
+        if (client instanceof RedisClusterClient) {
+            return ((RedisClusterClient) client).connect(ByteArrayCodec.INSTANCE);
+        }
+        return ((RedisClient) client).connect(ByteArrayCodec.INSTANCE);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RedisClusterCommands<byte[], byte[]> commandsOf(StatefulConnection<byte[], byte[]> connection) {
+        if (connection instanceof StatefulRedisClusterConnection) {
+            return ((StatefulRedisClusterConnection<byte[], byte[]>) connection).sync();
+        }
+        return ((StatefulRedisConnection<byte[], byte[]>) connection).sync();
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.circularlist.config;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+
+/**
+ * 熔断器
+ * 连续失败达到阈值后熔断, 熔断期间直接拒绝, 由调用方降级; 到期后只放行一个探测请求, 成功则恢复, 失败则重新熔断
+ * 状态转换在同一把锁内完成
+ @author lk
+ @create 2026/10/19-21:20
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    private final String name;
+
+    private final int failureThreshold;
+
+    private final Duration openDuration;
+
+    private int consecutiveFailures;
+
+    private long openUntil;
+
+    private boolean probing;
+
+    /**
+     * @param name 名称(用于日志)
+     * @param failureThreshold 熔断前允许的连续失败次数
+     * @param openDuration 熔断时长
+     */
+    public CircuitBreaker(String name, int failureThreshold, Duration openDuration) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * 是否放行本次请求
+     */
+    public synchronized boolean allowRequest() {
+        if (openUntil == 0) {
+            return true;
+        }
+        if (System.currentTimeMillis() < openUntil || probing) {
+            return false;
+        }
+        probing = true;
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        openUntil = 0;
+        probing = false;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (probing || consecutiveFailures >= failureThreshold) {
+            if (openUntil == 0 || probing) {
+                log.warn("连续失败, 熔断{}ms: name={}, consecutiveFailures={}", openDuration.toMillis(), name, consecutiveFailures);
+            }
+            openUntil = System.currentTimeMillis() + openDuration.toMillis();
+            probing = false;
+        }
+    }
+
+    /**
+     * 请求没有到达Redis(如本地线程池已满、被中断), 不计入失败, 放行下一个探测
+     */
+    public synchronized void onAbort() {
+        probing = false;
+    }
+
+    public synchronized boolean isOpen() {
+        return System.currentTimeMillis() < openUntil;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.circularlist.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * 线程池配置类
+ @author lk
+ @create 2026/10/19-10:05
+ */
+@Slf4j
+@Configuration
+public class ExecutorConfig {
+
+    /**
+     * 预取缓冲异步补充线程池
+     */
+    @Bean
+    public ThreadPoolTaskExecutor prefetchExecutor(@Value("${circular-list.prefetch.threads:2}") int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(64);
+        executor.setThreadNamePrefix("prefetch-");
+        return executor;
+    }
+
+    /**
+     * 延迟感知读取线程池, 调用方按自适应超时等待结果
+     */
+    @Bean
+    public ThreadPoolTaskExecutor readExecutor(@Value("${circular-list.reads.threads:16}") int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(1024);
+        executor.setThreadNamePrefix("redis-read-");
+        return executor;
+    }
+
+    /**
+     * Tomcat请求使用虚拟线程执行
+     * 阻塞在BRPOPLPUSH等Redis调用上的请求只占用虚拟线程, 不再占满平台线程池;
+     * 开启后需要相应调大blocking-pool.max-active, 否则并发阻塞请求会在连接池上排队
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "circular-list.virtual-threads", name = "enabled", havingValue = "true")
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer() {
+        if (!VirtualThreads.isSupported()) {
+            log.warn("当前JVM不支持虚拟线程, Tomcat继续使用平台线程池: javaVersion={}", System.getProperty("java.version"));
+            return protocolHandler -> {
+            };
+        }
+
+        log.info("Tomcat请求已切换为虚拟线程执行");
+        return protocolHandler -> protocolHandler.setExecutor(VirtualThreads.newPerTaskExecutor());
+    }
+}
@@ -0,0 +1,342 @@
+package com.example.circularlist.config;
+
+import io.lettuce.core.ReadFrom;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStaticMasterReplicaConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 延迟感知的只读命令执行
+ * 按操作统计最近的延迟分布: 超时时间取 p99 * 倍数(限制在上下限之间), 超过p95仍未返回时向从节点发出一次对冲读取,
+ * 先返回的结果生效, 未完成的另一方和超时的读取被取消(中断读取线程); 未配置从节点时只是不对冲, 同样在读取线程池执行并按自适应超时等待,
+ * Redis卡住时不必等满连接的命令超时
+ * 每个操作一个熔断器: 连续失败达到阈值后熔断, 熔断期间直接失败, 由调用方降级, 到期后放行一次探测请求
+ * 只用于读路径, 轮转等写操作和写路径上的读取仍然只走主节点
+ @author lk
+ @create 2026/10/19-16:05
+ */
+@Slf4j
+@Component
+public class LatencyAwareReads implements DisposableBean {
+
+    /**
+     * 延迟分布预热所需的最少样本数, 之前使用最大超时且不对冲
+     */
+    private static final int MIN_SAMPLES = 32;
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Autowired
+    @Qualifier("readExecutor")
+    private ThreadPoolTaskExecutor readExecutor;
+
+    @Value("${circular-list.reads.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 对冲读取的从节点(host:port), 为空时不对冲
+     */
+    @Value("${circular-list.reads.replica-nodes:}")
+    private List<String> replicaNodes;
+
+    @Value("${spring.redis.password:}")
+    private String password;
+
+    @Value("${spring.redis.database:0}")
+    private int database;
+
+    @Value("${circular-list.reads.timeout-multiplier:3}")
+    private double timeoutMultiplier;
+
+    @Value("${circular-list.reads.min-timeout:50ms}")
+    private Duration minTimeout;
+
+    @Value("${circular-list.reads.max-timeout:1000ms}")
+    private Duration maxTimeout;
+
+    @Value("${circular-list.reads.min-hedge-delay:2ms}")
+    private Duration minHedgeDelay;
+
+    @Value("${circular-list.reads.breaker.failure-threshold:5}")
+    private int failureThreshold;
+
+    @Value("${circular-list.reads.breaker.open-duration:5s}")
+    private Duration openDuration;
+
+    private LettuceConnectionFactory replicaFactory;
+
+    private RedisTemplate<String, Object> replicaTemplate;
+
+    private final Map<String, LatencyWindow> windows = new ConcurrentHashMap<>();
+
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    private final AtomicLong hedged = new AtomicLong();
+
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    private final AtomicLong timeouts = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * 最近的延迟样本(环形缓冲), 每记录一定数量的样本重新计算一次百分位
+     */
+    private static class LatencyWindow {
+        private final long[] samples = new long[512];
+        private final AtomicLong count = new AtomicLong();
+        private volatile long p95Micros;
+        private volatile long p99Micros;
+
+        /**
+         * 首次调用包含建立连接等一次性开销, 不计入分布
+         */
+        private final AtomicBoolean first = new AtomicBoolean(true);
+
+        private void record(long micros) {
+            if (first.compareAndSet(true, false)) {
+                return;
+            }
+
+            long total = count.incrementAndGet();
+            samples[(int) ((total - 1) % samples.length)] = micros;
+
+            if (total == MIN_SAMPLES || total > MIN_SAMPLES && total % 64 == 0) {
+                long[] sorted = Arrays.copyOf(samples, (int) Math.min(total, samples.length));
+                Arrays.sort(sorted);
+                p95Micros = sorted[(int) Math.ceil(sorted.length * 0.95) - 1];
+                p99Micros = sorted[(int) Math.ceil(sorted.length * 0.99) - 1];
+            }
+        }
+
+        private boolean isWarm() {
+            return count.get() >= MIN_SAMPLES;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (replicaNodes.isEmpty()) {
+            return;
+        }
+
+        String[] first = replicaNodes.get(0).trim().split(":");
+        RedisStaticMasterReplicaConfiguration configuration = new RedisStaticMasterReplicaConfiguration(first[0], Integer.parseInt(first[1]));
+        for (String node : replicaNodes.subList(1, replicaNodes.size())) {
+            String[] hostPort = node.trim().split(":");
+            configuration.addNode(hostPort[0], Integer.parseInt(hostPort[1]));
+        }
+        configuration.setDatabase(database);
+        if (!password.isEmpty()) {
+            configuration.setPassword(password);
+        }
+
+        LettuceClientConfiguration clientConfiguration = LettuceClientConfiguration.builder()
+                .readFrom(ReadFrom.REPLICA_PREFERRED)
+                .commandTimeout(maxTimeout)
+                .build();
+
+        replicaFactory = new LettuceConnectionFactory(configuration, clientConfiguration);
+        replicaFactory.afterPropertiesSet();
+
+        replicaTemplate = new RedisTemplate<>();
+        replicaTemplate.setConnectionFactory(replicaFactory);
+        replicaTemplate.setKeySerializer(redisTemplate.getKeySerializer());
+        replicaTemplate.setValueSerializer(redisTemplate.getValueSerializer());
+        replicaTemplate.setHashKeySerializer(redisTemplate.getHashKeySerializer());
+        replicaTemplate.setHashValueSerializer(redisTemplate.getHashValueSerializer());
+        replicaTemplate.afterPropertiesSet();
+
+        log.info("对冲读取已启用: replicaNodes={}", replicaNodes);
+    }
+
+    /**
+     * 预先建立到从节点的连接
+     * @return 是否配置了从节点
+     */
+    public boolean prepare() {
+        if (replicaTemplate == null) {
+            return false;
+        }
+        replicaTemplate.execute((RedisCallback<String>) RedisConnection::ping);
+        return true;
+    }
+
+    /**
+     * 执行只读命令
+     * @param operation 操作名称, 按操作分别统计延迟
+     * @param action 读取操作, 参数为主节点或从节点的RedisTemplate
+     * @return 读取结果
+     * @throws IllegalStateException 熔断中、超时或执行失败
+     */
+    public <T> T read(String operation, Function<RedisTemplate<String, Object>, T> action) {
+        if (!enabled) {
+            return action.apply(redisTemplate);
+        }
+
+        CircuitBreaker breaker = breakers.computeIfAbsent(operation, o -> new CircuitBreaker("read:" + o, failureThreshold, openDuration));
+        if (!breaker.allowRequest()) {
+            rejected.incrementAndGet();
+            throw new IllegalStateException("Redis读取已熔断: operation=" + operation);
+        }
+
+        LatencyWindow window = windows.computeIfAbsent(operation, o -> new LatencyWindow());
+        long start = System.nanoTime();
+
+        long timeoutMicros = getTimeoutMicros(window);
+        CompletableFuture<T> first = new CompletableFuture<>();
+        AtomicInteger launched = new AtomicInteger(1);
+        AtomicInteger failed = new AtomicInteger();
+        List<Future<?>> attempts = new ArrayList<>(2);
+
+        try {
+            attempts.add(attempt(redisTemplate, action, first, launched, failed, false));
+
+            if (replicaTemplate != null && window.isWarm()) {
+                long hedgeDelayMicros = Math.min(Math.max(window.p95Micros, minHedgeDelay.toNanos() / 1000), timeoutMicros);
+
+                try {
+                    return succeed(window, breaker, start, first.get(hedgeDelayMicros, TimeUnit.MICROSECONDS));
+                } catch (TimeoutException e) {
+                    //主节点超过p95仍未返回, 向从节点发出同样的读取, 先返回的生效; 两者都失败才算失败
+                    hedged.incrementAndGet();
+                    launched.incrementAndGet();
+                    attempts.add(attempt(replicaTemplate, action, first, launched, failed, true));
+                }
+            }
+
+            long remainingMicros = timeoutMicros - (System.nanoTime() - start) / 1000;
+            return succeed(window, breaker, start, first.get(Math.max(remainingMicros, 0), TimeUnit.MICROSECONDS));
+
+        } catch (TimeoutException e) {
+            timeouts.incrementAndGet();
+            window.record((System.nanoTime() - start) / 1000);
+            breaker.onFailure();
+            throw new IllegalStateException("Redis读取超时: operation=" + operation + ", timeoutMillis=" + timeoutMicros / 1000);
+
+        } catch (ExecutionException e) {
+            breaker.onFailure();
+            throw new IllegalStateException("Redis读取失败: operation=" + operation, e.getCause());
+
+        } catch (RejectedExecutionException e) {
+            //本地读取线程池已满, 不计入Redis失败
+            rejected.incrementAndGet();
+            breaker.onAbort();
+            throw new IllegalStateException("读取线程池已满: operation=" + operation, e);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            breaker.onAbort();
+            throw new IllegalStateException("Redis读取被中断: operation=" + operation, e);
+
+        } finally {
+            //取消未完成的读取(对冲的另一方、超时的读取), 不再占用读取线程和连接
+            for (Future<?> attempt : attempts) {
+                attempt.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * 在读取线程池中执行一次读取, 结果写入first; 已发出的读取全部失败时first以最后一个异常结束
+     */
+    private <T> Future<?> attempt(RedisTemplate<String, Object> template, Function<RedisTemplate<String, Object>, T> action,
+                                  CompletableFuture<T> first, AtomicInteger launched, AtomicInteger failed, boolean hedge) {
+        return readExecutor.submit(() -> {
+            try {
+                T value = action.apply(template);
+                if (first.complete(value) && hedge) {
+                    hedgeWins.incrementAndGet();
+                }
+            } catch (RuntimeException e) {
+                if (failed.incrementAndGet() == launched.get()) {
+                    first.completeExceptionally(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 监控指标: 各操作的p95/p99和当前超时, 对冲和熔断次数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("hedging", replicaTemplate != null);
+        stats.put("hedged", hedged.get());
+        stats.put("hedgeWins", hedgeWins.get());
+        stats.put("timeouts", timeouts.get());
+        stats.put("rejected", rejected.get());
+
+        Map<String, Object> operations = new LinkedHashMap<>();
+        windows.forEach((operation, window) -> {
+            Map<String, Object> latency = new LinkedHashMap<>();
+            latency.put("samples", window.count.get());
+            latency.put("p95Millis", window.p95Micros / 1000.0);
+            latency.put("p99Millis", window.p99Micros / 1000.0);
+            latency.put("timeoutMillis", getTimeoutMicros(window) / 1000.0);
+            CircuitBreaker breaker = breakers.get(operation);
+            if (breaker != null) {
+                latency.put("breakerOpen", breaker.isOpen());
+                latency.put("consecutiveFailures", breaker.getConsecutiveFailures());
+            }
+            operations.put(operation, latency);
+        });
+        stats.put("operations", operations);
+
+        return stats;
+    }
+
+    @Override
+    public void destroy() {
+        if (replicaFactory != null) {
+            replicaFactory.destroy();
+        }
+    }
+
+    private long getTimeoutMicros(LatencyWindow window) {
+        long maxMicros = maxTimeout.toNanos() / 1000;
+        if (!window.isWarm()) {
+            return maxMicros;
+        }
+
+        long adaptive = (long) (window.p99Micros * timeoutMultiplier);
+        return Math.min(Math.max(adaptive, minTimeout.toNanos() / 1000), maxMicros);
+    }
+
+    private <T> T succeed(LatencyWindow window, CircuitBreaker breaker, long start, T value) {
+        window.record((System.nanoTime() - start) / 1000);
+        breaker.onSuccess();
+        return value;
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.circularlist.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+
+/**
+ * Lua脚本配置类
+ * 需要原子执行的多步操作统一放在服务端脚本中, 一次往返完成
+ @author lk
+ @create 2026/10/19-09:12
+ */
+@Configuration
+public class LuaScriptConfig {
+
+    /**
+     * 列表成员变更(同时记录版本号和变更日志)
+     */
+    @Bean
+    public RedisScript<List<Object>> listMutateScript() {
+        return loadList("lua/list_mutate.lua");
+    }
+
+    /**
+     * 列表增量变更读取
+     */
+    @Bean
+    public RedisScript<List<Object>> listChangesScript() {
+        return loadList("lua/list_changes.lua");
+    }
+
+    /**
+     * 批量循环获取
+     */
+    @Bean
+    public RedisScript<List<Object>> rotateBatchScript() {
+        return loadList("lua/rotate_batch.lua");
+    }
+
+    /**
+     * 洗牌轮询(每轮一个伪随机排列)
+     */
+    @Bean
+    public RedisScript<List<Object>> shuffleNextScript() {
+        return loadList("lua/shuffle_next.lua");
+    }
+
+    /**
+     * 多列表循环获取
+     */
+    @Bean
+    public RedisScript<List<Object>> rotateMultiScript() {
+        return loadList("lua/rotate_multi.lua");
+    }
+
+    /**
+     * 广告轮播(带频控和投放节奏)
+     */
+    @Bean
+    public RedisScript<List<Object>> adNextScript() {
+        return loadList("lua/ad_next.lua");
+    }
+
+    /**
+     * 广告点击率排行更新
+     */
+    @Bean
+    public RedisScript<String> ctrUpdateScript() {
+        return load("lua/ctr_update.lua", String.class);
+    }
+
+    /**
+     * 定时轮播推进
+     */
+    @Bean
+    public RedisScript<Long> carouselTickScript() {
+        return load("lua/carousel_tick.lua", Long.class);
+    }
+
+    /**
+     * 集群容量预留
+     */
+    @Bean
+    public RedisScript<List<Object>> capacityReserveScript() {
+        return loadList("lua/capacity_reserve.lua");
+    }
+
+    /**
+     * 集群容量释放
+     */
+    @Bean
+    public RedisScript<Long> capacityReleaseScript() {
+        return load("lua/capacity_release.lua", Long.class);
+    }
+
+    /**
+     * 集群总容量调整
+     */
+    @Bean
+    public RedisScript<Long> capacityAdjustScript() {
+        return load("lua/capacity_adjust.lua", Long.class);
+    }
+
+    /**
+     * 列表登记(命名空间配额检查)
+     */
+    @Bean
+    public RedisScript<List<Object>> registryReserveScript() {
+        return loadList("lua/registry_reserve.lua");
+    }
+
+    /**
+     * 列表注销
+     */
+    @Bean
+    public RedisScript<Long> registryUnregisterScript() {
+        return load("lua/registry_unregister.lua", Long.class);
+    }
+
+    /**
+     * 返回多值回复的脚本: 结果由调用方传入的序列化器逐个元素反序列化(嵌套的多值回复为List)
+     */
+    @SuppressWarnings("unchecked")
+    private static RedisScript<List<Object>> loadList(String path) {
+        return load(path, (Class<List<Object>>) (Class<?>) List.class);
+    }
+
+    private static <T> RedisScript<T> load(String path, Class<T> resultType) {
+        DefaultRedisScript<T> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource(path));
+        script.setResultType(resultType);
+        return script;
+    }
+}
@@ -4,6 +4,15 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import io.lettuce.core.resource.NettyCustomizer;
+import io.netty.channel.Channel;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.data.redis.ClientResourcesBuilderCustomizer;
+import org.springframework.boot.autoconfigure.data.redis.LettuceClientConfigurationBuilderCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
@@ -12,6 +21,8 @@ import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.time.Duration;
+
 /**
  * Redis配置类
  @author lk
@@ -52,4 +63,37 @@ public class RedisConfig {
     public StringRedisTemplate stringRedisTemplate(RedisConnectionFactory factory) {
         return new StringRedisTemplate(factory);
     }
+
+    /**
+     * Redis Cluster拓扑刷新
+     * 配置了spring.redis.cluster.nodes时生效, 定期刷新并在MOVED/ASK重定向、连接断开时立即刷新,
+     * 扩容或故障转移后客户端能及时感知新的slot分布
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "spring.redis.cluster", name = "nodes")
+    public LettuceClientConfigurationBuilderCustomizer clusterTopologyCustomizer(@Value("${circular-list.cluster.refresh-period:30s}") Duration refreshPeriod) {
+        ClusterTopologyRefreshOptions refreshOptions = ClusterTopologyRefreshOptions.builder()
+                .enablePeriodicRefresh(refreshPeriod)
+                .enableAllAdaptiveRefreshTriggers()
+                .build();
+
+        return builder -> builder.clientOptions(ClusterClientOptions.builder()
+                .topologyRefreshOptions(refreshOptions)
+                .build());
+    }
+
+    /**
+     * 共享连接的写合并
+     * 关闭Lettuce连接池后, 非阻塞命令都走同一个多路复用连接, 并发请求的命令在事件循环中
+     * 合并flush, 多条命令一次写出, 减少系统调用
+     */
+    @Bean
+    public ClientResourcesBuilderCustomizer flushConsolidationCustomizer(@Value("${circular-list.shared-connection.flush-after:256}") int flushAfter) {
+        return builder -> builder.nettyCustomizer(new NettyCustomizer() {
+            @Override
+            public void afterChannelInitialized(Channel channel) {
+                channel.pipeline().addFirst(new FlushConsolidationHandler(flushAfter, true));
+            }
+        });
+    }
 }
@@ -0,0 +1,50 @@
+package com.example.circularlist.config;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 虚拟线程工具类
+ * 项目的最低版本为Java 17, 在Java 21及以上构建时自动启用jdk21 profile(java.version=21);
+ * 虚拟线程模式需要运行在Java 21及以上, 通过反射创建虚拟线程执行器, Java 17上该模式不可用
+ @author lk
+ @create 2026/10/19-13:52
+ */
+public final class VirtualThreads {
+
+    private static final Method NEW_EXECUTOR = findFactory();
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * 当前JVM是否支持虚拟线程
+     */
+    public static boolean isSupported() {
+        return NEW_EXECUTOR != null;
+    }
+
+    /**
+     * 创建每个任务一个虚拟线程的执行器
+     * @throws IllegalStateException 当前JVM不支持虚拟线程
+     */
+    public static ExecutorService newPerTaskExecutor() {
+        if (NEW_EXECUTOR == null) {
+            throw new IllegalStateException("虚拟线程需要Java 21及以上, 当前版本: " + System.getProperty("java.version"));
+        }
+
+        try {
+            return (ExecutorService) NEW_EXECUTOR.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("创建虚拟线程执行器失败", e);
+        }
+    }
+
+    private static Method findFactory() {
+        try {
+            return java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -1,17 +1,32 @@
 package com.example.circularlist.controller;
 
+import com.example.circularlist.config.BlockingCommandPool;
+import com.example.circularlist.config.LatencyAwareReads;
 import com.example.circularlist.model.AdItem;
+import com.example.circularlist.model.BroadcastMessage;
+import com.example.circularlist.model.ReadResult;
 import com.example.circularlist.model.Task;
 import com.example.circularlist.model.WorkerNode;
 import com.example.circularlist.service.AdRotationService;
+import com.example.circularlist.service.BroadcastChannel;
 import com.example.circularlist.service.CircularList;
+import com.example.circularlist.service.ListRegistry;
 import com.example.circularlist.service.LoadBalancerService;
+import com.example.circularlist.service.ReadinessWarmUp;
 import com.example.circularlist.service.ResourcePoolService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -38,6 +53,21 @@ public class CircularController {
     @Autowired
     private ResourcePoolService resourcePoolService;
 
+    @Autowired
+    private BroadcastChannel broadcastChannel;
+
+    @Autowired
+    private BlockingCommandPool blockingCommandPool;
+
+    @Autowired
+    private ListRegistry listRegistry;
+
+    @Autowired
+    private LatencyAwareReads latencyAwareReads;
+
+    @Autowired
+    private ReadinessWarmUp readinessWarmUp;
+
     //负载均衡相关API
 
     /**
@@ -47,7 +77,7 @@ public class CircularController {
      */
     @PostMapping("/workers/init")
     public ResponseEntity<Map<String, Object>> initWorkers(@RequestParam(defaultValue = "5") int count) {
-        List<WorkerNode> workers = loadBalancerService.createSampleWorkers(count);
+        List<WorkerNode> workers = LoadBalancerService.createSampleWorkers(count);
         loadBalancerService.initWorkers(workers);
 
         Map<String, Object> result = new HashMap<>();
@@ -75,26 +105,71 @@ public class CircularController {
      */
     @PostMapping("/tasks/assign")
     public ResponseEntity<Map<String, Object>> assignTask(@RequestParam(defaultValue = "10") int count) {
-        List<Task> tasks = loadBalancerService.createSampleTasks(count);
+        List<Task> tasks = LoadBalancerService.createSampleTasks(count);
         List<Task> assignedTasks = loadBalancerService.assignTasks(tasks);
 
         Map<String, Object> result = new HashMap<>();
+
+        if (assignedTasks == null) {
+            result.put("success", false);
+            result.put("message", "集群容量已满, 请稍后重试");
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "1").body(result);
+        }
+
         result.put("success", true);
         result.put("message", "任务已分配");
-        result.put("totalTasks", count);
+        result.put("totalTasks", tasks.size());
         result.put("assignedTasks", assignedTasks.size());
         result.put("tasks", assignedTasks);
         return ResponseEntity.ok(result);
     }
 
+    /**
+     * 流式提交并分配任务
+     * 请求体和响应体都是NDJSON, 结果按批写出; 直接写响应流而不使用异步请求, 大批量提交不受异步请求超时限制
+     * @param body
+     * @param response
+     * @throws IOException
+     */
+    @PostMapping(value = "/tasks/ingest", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public void ingestTasks(InputStream body, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        loadBalancerService.ingestTasks(body, response.getOutputStream());
+    }
+
+    /**
+     * 任务完成, 归还集群容量
+     * @param count
+     * @return
+     */
+    @PostMapping("/tasks/complete")
+    public ResponseEntity<Map<String, Object>> completeTasks(@RequestParam(defaultValue = "1") int count) {
+        long available = loadBalancerService.completeTasks(count);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("message", "任务已完成");
+        result.put("available", available);
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 查看集群容量
+     * @return
+     */
+    @GetMapping("/tasks/capacity")
+    public ResponseEntity<Map<String, Object>> getCapacity() {
+        return ResponseEntity.ok(loadBalancerService.getCapacityStats());
+    }
+
     /**
      * 查看所有工作节点
      * @return
      */
     @GetMapping("/workers/all")
     public ResponseEntity<List<WorkerNode>> getAllWorkers() {
-        List<WorkerNode> workers = loadBalancerService.getAllWorkers();
-        return ResponseEntity.ok(workers);
+        return readResponse(loadBalancerService.getAllWorkers());
     }
 
 
@@ -107,7 +182,7 @@ public class CircularController {
      */
     @PostMapping("/ads/init")
     public ResponseEntity<Map<String, Object>> initAds(@RequestParam(defaultValue = "5") int count) {
-        List<AdItem> ads = adRotationService.createSampleAds(count);
+        List<AdItem> ads = AdRotationService.createSampleAds(count);
         adRotationService.initAds(ads);
 
         Map<String, Object> result = new HashMap<>();
@@ -120,11 +195,22 @@ public class CircularController {
 
     /**
      * 获取下一个广告
+     * @param userId 用户ID, 传入时按用户频控
      * @return
      */
     @GetMapping("/ads/next")
-    public ResponseEntity<AdItem> getNextId() {
-        AdItem ad = adRotationService.getNextAd();
+    public ResponseEntity<AdItem> getNextId(@RequestParam(required = false) String userId) {
+        AdItem ad = adRotationService.getNextAd(userId);
+        return ResponseEntity.ok(ad);
+    }
+
+    /**
+     * 获取定时轮播的当前广告
+     * @return
+     */
+    @GetMapping("/ads/current")
+    public ResponseEntity<AdItem> getCurrentAd() {
+        AdItem ad = adRotationService.getCurrentAd();
         return ResponseEntity.ok(ad);
     }
 
@@ -145,12 +231,70 @@ public class CircularController {
      */
     @PostMapping("/ads/click")
     public ResponseEntity<Map<String, Object>> recordClick(@RequestParam String adId) {
-        adRotationService.recordClick(adId);
+        Double ctr = adRotationService.recordClick(adId);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", ctr != null);
+        result.put("message", ctr != null ? "点击已记录" : "广告不存在或尚未展示, 点击未记录");
+        result.put("adId", adId);
+        result.put("ctr", ctr);
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 点击率排行
+     * @param k
+     * @return
+     */
+    @GetMapping("/ads/top")
+    public ResponseEntity<List<Map<String, Object>>> getTopAds(@RequestParam(defaultValue = "10") int k) {
+        return ResponseEntity.ok(adRotationService.getTopAds(k));
+    }
+
+    /**
+     * 设置广告投放预算和节奏
+     * @param adId
+     * @param dailyCap 每日投放上限, 0表示不限速
+     * @param totalBudget 总投放次数, 0表示不限总量
+     * @param burst 令牌桶容量, 0表示默认1分钟的投放量
+     * @return
+     */
+    @PostMapping("/ads/budget")
+    public ResponseEntity<Map<String, Object>> setAdBudget(@RequestParam String adId,
+                                                           @RequestParam(defaultValue = "0") long dailyCap,
+                                                           @RequestParam(defaultValue = "0") long totalBudget,
+                                                           @RequestParam(defaultValue = "0") double burst) {
+        Map<String, Object> pacing = adRotationService.setAdBudget(adId, dailyCap, totalBudget, burst);
 
         Map<String, Object> result = new HashMap<>();
         result.put("success", true);
-        result.put("message", "点击已记录");
+        result.put("message", pacing.isEmpty() ? "广告投放限制已取消" : "广告投放预算已设置");
         result.put("adId", adId);
+        result.put("pacing", pacing);
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 多广告位: 一次请求获取每个类目的下一个广告
+     * @param categories 类目, 不传时为全部类目
+     * @param distinct 各广告位的广告是否不重复
+     * @param userId 用户ID, 传入时按用户频控
+     * @return
+     */
+    @GetMapping("/ads/slots")
+    public ResponseEntity<Map<String, Object>> getAdSlots(@RequestParam(required = false) List<String> categories,
+                                                          @RequestParam(defaultValue = "true") boolean distinct,
+                                                          @RequestParam(required = false) String userId) {
+        if (categories == null || categories.isEmpty()) {
+            categories = AdRotationService.CATEGORIES;
+        }
+
+        List<AdItem> ads = adRotationService.getAdSlots(categories, distinct, userId);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("categories", categories);
+        result.put("ads", ads);
         return ResponseEntity.ok(result);
     }
 
@@ -160,8 +304,7 @@ public class CircularController {
      */
     @GetMapping("/ads/all")
     public ResponseEntity<List<AdItem>> getAllAds() {
-        List<AdItem> ads = adRotationService.getAllAds();
-        return ResponseEntity.ok(ads);
+        return readResponse(adRotationService.getAllAds());
     }
 
 
@@ -176,11 +319,12 @@ public class CircularController {
      */
     @PostMapping("/pool/init")
     public ResponseEntity<Map<String, Object>> initResourcePool(@RequestParam String poolName, @RequestParam(defaultValue = "10") int size, @RequestParam(defaultValue = "connection") String resourceType) {
-        resourcePoolService.initResourcePool(poolName, size, resourceType);
+        long initialized = resourcePoolService.initResourcePool(poolName, size, resourceType);
+        boolean success = initialized > 0 || size <= 0;
 
         Map<String, Object> result = new HashMap<>();
-        result.put("success", true);
-        result.put("message", "资源池已初始化");
+        result.put("success", success);
+        result.put("message", success ? "资源池已初始化" : "资源池初始化失败(超出命名空间配额或Redis不可用)");
         result.put("poolName", poolName);
         result.put("size", size);
         result.put("resourceType", resourceType);
@@ -205,7 +349,8 @@ public class CircularController {
      */
     @GetMapping("/pool/status")
     public ResponseEntity<Map<String, Object>> getPoolStatus(@RequestParam String poolName) {
-        List<ResourcePoolService.Resource> resources = resourcePoolService.getPoolStatus(poolName);
+        ReadResult<List<ResourcePoolService.Resource>> result = resourcePoolService.getPoolStatus(poolName);
+        List<ResourcePoolService.Resource> resources = result.getValue();
         long available = resources.stream()
                 .filter(r -> "available".equals(r.getStatus()))
                 .count();
@@ -216,11 +361,89 @@ public class CircularController {
         status.put("available", available);
         status.put("inUse", resources.size() - available);
         status.put("resources", resources);
+        status.put("stale", result.isStale());
 
         return ResponseEntity.ok(status);
     }
 
 
+    //消息广播相关API
+
+    /**
+     * 发布广播消息
+     * @param channel
+     * @param payload 消息内容(请求体)
+     * @return
+     */
+    @PostMapping("/broadcast/publish")
+    public ResponseEntity<Map<String, Object>> publish(@RequestParam String channel, @RequestBody String payload) {
+        String id = broadcastChannel.publish(channel, payload);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", id != null);
+        result.put("channel", channel);
+        result.put("id", id);
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 订阅方读取广播消息
+     * @param channel
+     * @param group 订阅方(消费组)
+     * @param consumer 消费者名称
+     * @param count 最多读取数量
+     * @param block 没有新消息时的阻塞时间(毫秒)
+     * @return
+     */
+    @GetMapping("/broadcast/read")
+    public ResponseEntity<List<BroadcastMessage>> readBroadcast(@RequestParam String channel,
+                                                                @RequestParam String group,
+                                                                @RequestParam(defaultValue = "consumer-1") String consumer,
+                                                                @RequestParam(defaultValue = "100") int count,
+                                                                @RequestParam(defaultValue = "0") long block) {
+        List<BroadcastMessage> messages = broadcastChannel.read(channel, group, consumer, count, block);
+        return ResponseEntity.ok(messages);
+    }
+
+    /**
+     * 确认广播消息
+     * @param channel
+     * @param group
+     * @param ids 消息ID, 逗号分隔
+     * @return
+     */
+    @PostMapping("/broadcast/ack")
+    public ResponseEntity<Map<String, Object>> ackBroadcast(@RequestParam String channel, @RequestParam String group, @RequestParam String ids) {
+        long acked = broadcastChannel.ack(channel, group, Arrays.asList(ids.split(",")));
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("channel", channel);
+        result.put("group", group);
+        result.put("acked", acked);
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 认领超时未确认的广播消息
+     * @param channel
+     * @param group
+     * @param consumer 接管的消费者
+     * @param minIdle 最小空闲时间(毫秒)
+     * @param count
+     * @return
+     */
+    @PostMapping("/broadcast/recover")
+    public ResponseEntity<List<BroadcastMessage>> recoverBroadcast(@RequestParam String channel,
+                                                                   @RequestParam String group,
+                                                                   @RequestParam String consumer,
+                                                                   @RequestParam(defaultValue = "30000") long minIdle,
+                                                                   @RequestParam(defaultValue = "100") int count) {
+        List<BroadcastMessage> messages = broadcastChannel.recoverPending(channel, group, consumer, minIdle, count);
+        return ResponseEntity.ok(messages);
+    }
+
+
     //通用循环列表API
 
     /**
@@ -230,11 +453,47 @@ public class CircularController {
      */
     @GetMapping("/list/size")
     public ResponseEntity<Map<String, Object>> getListSize(@RequestParam String listName) {
-        long size = circularList.getSize(listName);
+        ReadResult<Long> size = circularList.readSize(listName);
 
         Map<String, Object> result = new HashMap<>();
         result.put("listName", listName);
-        result.put("size", size);
+        result.put("size", size.getValue());
+        result.put("stale", size.isStale());
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 查看列表登记信息(元素数量、近似内存、最后访问时间)及所属命名空间的用量和配额
+     * @param listName
+     * @return
+     */
+    @GetMapping("/list/info")
+    public ResponseEntity<Map<String, Object>> getListInfo(@RequestParam String listName) {
+        Map<String, Object> info = listRegistry.getInfo(listName);
+        info.put("namespaceUsage", listRegistry.getNamespaceStats(listRegistry.namespaceOf(listName)));
+        return ResponseEntity.ok(info);
+    }
+
+    /**
+     * 查看列表自某个版本以来的成员变更
+     * 轮询方保存返回的version, 下次作为since传入; mode为delta时按顺序应用changes, 为snapshot时用items替换本地副本
+     * @param listName
+     * @param since
+     * @return
+     */
+    @GetMapping("/list/changes")
+    public ResponseEntity<Map<String, Object>> getListChanges(@RequestParam String listName,
+                                                              @RequestParam(defaultValue = "0") long since) {
+        Map<String, Object> changes = circularList.getChanges(listName, since, Object.class);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", changes != null);
+        result.put("listName", listName);
+        if (changes != null) {
+            result.putAll(changes);
+        } else {
+            result.put("message", "获取变更失败");
+        }
         return ResponseEntity.ok(result);
     }
 
@@ -253,4 +512,41 @@ public class CircularController {
         result.put("message", success ? "列表已清空" : "清空失败");
         return ResponseEntity.ok(result);
     }
+
+    /**
+     * 查看阻塞命令连接池状态(借用等待时间等)
+     * @return
+     */
+    @GetMapping("/redis/pool-stats")
+    public ResponseEntity<Map<String, Object>> getRedisPoolStats() {
+        return ResponseEntity.ok(blockingCommandPool.getStats());
+    }
+
+    /**
+     * 查看只读命令的延迟分布、自适应超时、对冲和熔断状态
+     * @return
+     */
+    @GetMapping("/redis/read-stats")
+    public ResponseEntity<Map<String, Object>> getRedisReadStats() {
+        return ResponseEntity.ok(latencyAwareReads.getStats());
+    }
+
+    /**
+     * 查看启动预热结果和就绪状态
+     * @return
+     */
+    @GetMapping("/redis/warm-up")
+    public ResponseEntity<Map<String, Object>> getWarmUpReport() {
+        return ResponseEntity.ok(readinessWarmUp.getReport());
+    }
+
+    /**
+     * 读取结果为本地快照时加上 Warning: 110 响应头(RFC 7234, Response is Stale)
+     */
+    private static <T> ResponseEntity<T> readResponse(ReadResult<T> result) {
+        if (result.isStale()) {
+            return ResponseEntity.ok().header(HttpHeaders.WARNING, "110 - \"Response is Stale\"").body(result.getValue());
+        }
+        return ResponseEntity.ok(result.getValue());
+    }
 }
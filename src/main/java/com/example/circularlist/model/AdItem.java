@@ -21,6 +21,11 @@ public class AdItem {
      */
     private String adId;
 
+    /**
+     * 广告类目
+     */
+    private String category;
+
     /**
      * 广告标题
      */
@@ -0,0 +1,38 @@
+package com.example.circularlist.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 广播消息模型
+ @author lk
+ @create 2026/10/19-11:52
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BroadcastMessage {
+
+    /**
+     * 消息ID(Stream记录ID)
+     */
+    private String id;
+
+    /**
+     * 频道名称
+     */
+    private String channel;
+
+    /**
+     * 消息内容
+     */
+    private String payload;
+
+    /**
+     * 发布时间(毫秒)
+     */
+    private Long timestamp;
+}
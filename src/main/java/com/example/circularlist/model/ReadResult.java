@@ -0,0 +1,25 @@
+package com.example.circularlist.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 读取结果
+ * Redis慢或不可用时读取方法返回本地快照, stale为true, 内容可能落后于Redis
+ @author lk
+ @create 2026/10/19-19:50
+ */
+@Data
+@AllArgsConstructor
+public class ReadResult<T> {
+
+    /**
+     * 读取到的值
+     */
+    private T value;
+
+    /**
+     * 是否为降级返回的本地快照
+     */
+    private boolean stale;
+}
@@ -1,12 +1,26 @@
 package com.example.circularlist.service;
 
 import com.example.circularlist.model.AdItem;
+import com.example.circularlist.model.ReadResult;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
 
 /**
  * 广告轮播服务
@@ -21,22 +35,213 @@ public class AdRotationService {
     @Autowired
     private CircularList circularList;
 
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisScript<List<Object>> adNextScript;
+
+    @Autowired
+    private RedisScript<String> ctrUpdateScript;
+
+    @Autowired
+    private CarouselService carouselService;
+
+    @Autowired
+    private StructuredFanOut structuredFanOut;
+
+    @Value("${circular-list.ads.frequency-cap.max-impressions:3}")
+    private int maxImpressions;
+
+    @Value("${circular-list.ads.frequency-cap.window-seconds:3600}")
+    private long windowSeconds;
+
+    @Value("${circular-list.ads.frequency-cap.bucket-seconds:600}")
+    private long bucketSeconds;
+
+    @Value("${circular-list.ads.frequency-cap.sketch-width:262144}")
+    private int sketchWidth;
+
+    @Value("${circular-list.ads.frequency-cap.sketch-depth:4}")
+    private int sketchDepth;
+
+    /**
+     * 点击率计数半衰期, 计数按指数衰减, 近期表现权重更高
+     */
+    @Value("${circular-list.ads.ctr.half-life:1h}")
+    private Duration ctrHalfLife;
+
+    /**
+     * 先验点击率, 展示较少的广告的点击率向它收缩
+     */
+    @Value("${circular-list.ads.ctr.prior-ctr:0.02}")
+    private double priorCtr;
+
+    /**
+     * 先验强度(相当于多少次展示)
+     */
+    @Value("${circular-list.ads.ctr.prior-strength:100}")
+    private double priorStrength;
+
+    /**
+     * 是否按点击率加权轮播
+     */
+    @Value("${circular-list.ads.ctr.weighted:false}")
+    private boolean weighted;
+
+    /**
+     * 加权轮播的最小接受概率, 避免点击率低的广告完全没有展示机会
+     */
+    @Value("${circular-list.ads.ctr.min-weight:0.1}")
+    private double minWeight;
+
     private static final String AD_LIST = "ads";
 
+    /**
+     * 定时轮播使用的广告列表, 与按请求推进的ads列表分开, 轮播不影响ads的轮询顺序和节奏控制
+     */
+    private static final String CAROUSEL_LIST = "{" + AD_LIST + "}:carousel";
+
+    /**
+     * 广告类目, 每个类目一个循环列表, 用于多广告位页面
+     */
+    public static final List<String> CATEGORIES = Arrays.asList("电子产品", "服装鞋帽", "食品饮料", "家居用品", "运动健身");
+
+    private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+
     /**
      * 初始化广告列表
      */
     public void initAds(List<AdItem> ads) {
         circularList.initList(AD_LIST, ads);
+
+        //按类目拆分到各类目列表
+        Map<String, List<AdItem>> byCategory = new LinkedHashMap<>();
+        for (String category : CATEGORIES) {
+            byCategory.put(category, new ArrayList<>());
+        }
+        for (AdItem ad : ads) {
+            if (ad.getCategory() != null) {
+                byCategory.computeIfAbsent(ad.getCategory(), c -> new ArrayList<>()).add(ad);
+            }
+        }
+        for (Map.Entry<String, List<AdItem>> entry : byCategory.entrySet()) {
+            circularList.initList(getCategoryList(entry.getKey()), entry.getValue());
+        }
+        circularList.initList(CAROUSEL_LIST, ads);
+
         log.info("广告列表已初始化: count={}", ads.size());
     }
 
     /**
      * 获取下一个要展示的广告
+     * 广告在取出时扣减节奏令牌和预算, 因此不使用本地预取缓冲, 每次展示都访问Redis
      */
     public AdItem getNextAd() {
-        AdItem ad = circularList.getNext(AD_LIST, AdItem.class);
+        return getNextAd(null);
+    }
+
+    /**
+     * 获取下一个要展示给指定用户的广告
+     * 没有令牌的广告在同一次脚本调用中被跳过, 预算用完的广告直接移出轮播
+     * 传入userId时跳过该用户在时间窗口内已看过maxImpressions次的广告,
+     * 曝光计数存放在按时间桶划分的Count-Min Sketch中, 内存与用户数无关;
+     * 点击率排行的展示计数在同一次脚本调用中更新, 与频控扣减一起原子完成
+     */
+    public AdItem getNextAd(String userId) {
+        if (userId == null) {
+            userId = "";
+        }
+
+        List<AdItem> ads = selectAds(AD_LIST, userId, 1, false);
+
+        if (ads.isEmpty()) {
+            log.debug("没有可展示的广告: userId={}", userId);
+            return null;
+        }
+
+        return recordImpression(ads.get(0));
+    }
+
+    /**
+     * 多广告位: 每个广告位从对应类目的列表选出一个广告
+     * 与getNextAd相同, 经过广告轮播脚本扣减节奏令牌、预算并做频控, 预算用完的广告移出该类目列表;
+     * 每个类目一次脚本调用(同一类目的多个广告位合并为一次), 开启虚拟线程时各类目并发执行
+     * 类目列表使用相同的hash tag, 集群模式下也在同一个slot
+     * @param categories 类目(每个广告位一个)
+     * @param distinct 各广告位的广告是否不重复(每个广告只属于一个类目, 只有重复的类目需要去重)
+     * @param userId 用户ID, 为空时不做频控
+     * @return 与categories一一对应的广告, 类目下没有可展示的广告时为null
+     */
+    public List<AdItem> getAdSlots(List<String> categories, boolean distinct, String userId) {
+        String user = userId != null ? userId : "";
+
+        Map<String, List<Integer>> slotsByCategory = new LinkedHashMap<>();
+        for (int i = 0; i < categories.size(); i++) {
+            slotsByCategory.computeIfAbsent(categories.get(i), c -> new ArrayList<>()).add(i);
+        }
+        List<Map.Entry<String, List<Integer>>> groups = new ArrayList<>(slotsByCategory.entrySet());
+
+        Function<Map.Entry<String, List<Integer>>, List<AdItem>> select = group ->
+                selectAds(getCategoryList(group.getKey()), user, group.getValue().size(), distinct);
+        List<List<AdItem>> selected;
+        if (structuredFanOut.isEnabled()) {
+            selected = structuredFanOut.invokeAll(groups, select);
+        } else {
+            selected = new ArrayList<>();
+            for (Map.Entry<String, List<Integer>> group : groups) {
+                selected.add(select.apply(group));
+            }
+        }
+
+        List<AdItem> ads = new ArrayList<>(Collections.nCopies(categories.size(), null));
+        for (int g = 0; g < groups.size(); g++) {
+            List<Integer> slots = groups.get(g).getValue();
+            List<AdItem> picked = selected.get(g);
+            for (int j = 0; j < picked.size() && j < slots.size(); j++) {
+                ads.set(slots.get(j), recordImpression(picked.get(j)));
+            }
+        }
+
+        return ads;
+    }
+
+    /**
+     * 获取定时轮播的当前广告
+     * 广告按固定时间片切换, 同一时间片内所有请求看到同一个广告
+     * 需要在circular-list.carousel.lists中配置 {ads}:carousel, 未配置时返回null
+     */
+    public AdItem getCurrentAd() {
+        return carouselService.getCurrent(CAROUSEL_LIST, AdItem.class);
+    }
+
+    /**
+     * 通过广告轮播脚本从指定列表选出count个广告
+     * 节奏令牌、预算、频控计数和点击率排行都按广告ID记录在ads列表下, 各类目列表共用
+     */
+    private List<AdItem> selectAds(String listName, String userId, int count, boolean distinct) {
+        List<String> keys = new ArrayList<>();
+        keys.add(circularList.getSubKey(AD_LIST, "pacing"));
+        keys.add(getCtrStatsKey());
+        keys.add(getCtrRankKey());
 
+        if (!userId.isEmpty()) {
+            long currentBucket = System.currentTimeMillis() / 1000 / bucketSeconds;
+            long bucketCount = Math.max(1, (windowSeconds + bucketSeconds - 1) / bucketSeconds);
+
+            //当前桶在前, 依次向前覆盖整个窗口
+            for (long i = 0; i < bucketCount; i++) {
+                keys.add(circularList.getSubKey(AD_LIST, "freq:" + (currentBucket - i)));
+            }
+        }
+
+        return circularList.takeByScript(listName, adNextScript, keys, AdItem.class,
+                userId, maxImpressions, sketchWidth, sketchDepth, windowSeconds + bucketSeconds, count,
+                ctrHalfLife.toMillis(), getPriorAlpha(), getPriorBeta(), weighted ? 1 : 0,
+                ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE), minWeight, distinct ? 1 : 0);
+    }
+
+    private AdItem recordImpression(AdItem ad) {
         if (ad != null) {
             //增加展示次数
             ad.setImpressions(ad.getImpressions() + 1);
@@ -56,38 +261,182 @@ public class AdRotationService {
 
     /**
      * 记录广告点击
+     * 只更新该广告的衰减计数和排行分数, 与广告数量无关;
+     * 没有展示计数的广告(未展示过、已移除或不存在)拒绝记录, 任意adId不会写入计数和排行
+     * @return 更新后的平滑点击率, 被拒绝或失败时返回null
      */
-    public void recordClick(String adId) {
-        List<AdItem> ads = circularList.viewAll(AD_LIST, AdItem.class);
+    public Double recordClick(String adId) {
+        Double ctr = updateCtr(Arrays.asList(adId, "0", "1"));
+        if (ctr == null) {
+            log.warn("广告点击未记录: adId={}", adId);
+            return null;
+        }
+        log.info("广告点击: adId={}, ctr={}", adId, ctr);
+        return ctr;
+    }
 
-        for (AdItem ad : ads) {
-            if (ad.getAdId().equals(adId)) {
-                ad.setClicks(ad.getClicks() + 1);
-                log.info("广告点击: adId={}, clicks={}", adId, ad.getClicks());
-                break;
+    /**
+     * 点击率最高的k个广告
+     * 排行按展示和点击事件增量维护, 查询为 O(log N + K)
+     * @param k 数量
+     * @return 广告ID、平滑点击率、衰减后的展示和点击计数(截至该广告最后一次事件)
+     */
+    public List<Map<String, Object>> getTopAds(int k) {
+        List<Map<String, Object>> top = new ArrayList<>();
+        if (k <= 0) {
+            return top;
+        }
+
+        try {
+            Set<ZSetOperations.TypedTuple<String>> ranked = stringRedisTemplate.opsForZSet().reverseRangeWithScores(getCtrRankKey(), 0, k - 1);
+            if (ranked == null || ranked.isEmpty()) {
+                return top;
+            }
+
+            List<Object> fields = new ArrayList<>();
+            for (ZSetOperations.TypedTuple<String> tuple : ranked) {
+                fields.add(tuple.getValue() + ":imp");
+                fields.add(tuple.getValue() + ":clk");
+            }
+            List<Object> counts = stringRedisTemplate.opsForHash().multiGet(getCtrStatsKey(), fields);
+
+            int i = 0;
+            for (ZSetOperations.TypedTuple<String> tuple : ranked) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("adId", tuple.getValue());
+                entry.put("ctr", tuple.getScore());
+                entry.put("impressions", toDouble(counts.get(i++)));
+                entry.put("clicks", toDouble(counts.get(i++)));
+                top.add(entry);
             }
+
+        } catch (Exception e) {
+            log.error("获取点击率排行失败: k={}", k, e);
+        }
+
+        return top;
+    }
+
+    /**
+     * 设置广告投放预算和节奏
+     * 令牌按dailyCap均匀分布到一天中补充, burst为最多可积攒的令牌数
+     * @param adId 广告ID
+     * @param dailyCap 每日投放上限, <=0表示不限速
+     * @param totalBudget 总投放次数, <=0表示不限总量
+     * @param burst 令牌桶容量, <=0时默认为1分钟的投放量
+     */
+    public Map<String, Object> setAdBudget(String adId, long dailyCap, long totalBudget, double burst) {
+        String key = circularList.getSubKey(AD_LIST, "pacing");
+
+        Map<String, String> fields = new HashMap<>();
+        if (dailyCap > 0) {
+            double rate = (double) dailyCap / SECONDS_PER_DAY;
+            fields.put(adId + ":rate", String.valueOf(rate));
+            fields.put(adId + ":burst", String.valueOf(burst > 0 ? burst : Math.max(1, rate * 60)));
+        }
+        if (totalBudget > 0) {
+            fields.put(adId + ":budget", String.valueOf(totalBudget));
         }
+
+        //重新设置时清空已有的令牌状态
+        stringRedisTemplate.opsForHash().delete(key, adId + ":rate", adId + ":burst", adId + ":tokens", adId + ":ts", adId + ":budget");
+        if (!fields.isEmpty()) {
+            stringRedisTemplate.opsForHash().putAll(key, fields);
+        }
+
+        log.info("广告投放预算已设置: adId={}, dailyCap={}, totalBudget={}, burst={}", adId, dailyCap, totalBudget, burst);
+
+        return new HashMap<>(fields);
     }
 
     /**
      * 添加广告
      */
     public boolean addAd(AdItem ad) {
-        return circularList.addItem(AD_LIST, ad);
+        boolean added = circularList.addItem(AD_LIST, ad);
+        if (added && ad.getCategory() != null) {
+            circularList.addItem(getCategoryList(ad.getCategory()), ad);
+        }
+        if (added) {
+            circularList.addItem(CAROUSEL_LIST, ad);
+        }
+        return added;
     }
 
     /**
      * 移除广告
      */
     public boolean removeAd(AdItem ad) {
-        return circularList.removeItem(AD_LIST, ad);
+        boolean removed = circularList.removeItem(AD_LIST, ad);
+        if (ad.getCategory() != null) {
+            circularList.removeItem(getCategoryList(ad.getCategory()), ad);
+        }
+        if (removed) {
+            circularList.removeItem(CAROUSEL_LIST, ad);
+            stringRedisTemplate.opsForZSet().remove(getCtrRankKey(), ad.getAdId());
+            stringRedisTemplate.opsForHash().delete(getCtrStatsKey(), ad.getAdId() + ":imp", ad.getAdId() + ":clk", ad.getAdId() + ":ts");
+        }
+        return removed;
+    }
+
+    /**
+     * 批量更新点击率排行
+     * @param events 每三个一组: 广告ID, 展示增量, 点击增量
+     * @return 最后一个广告更新后的点击率, 最后一个事件被忽略或失败时返回null
+     */
+    private Double updateCtr(List<String> events) {
+        if (events.isEmpty()) {
+            return null;
+        }
+
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(ctrHalfLife.toMillis()));
+        args.add(String.valueOf(getPriorAlpha()));
+        args.add(String.valueOf(getPriorBeta()));
+        args.addAll(events);
+
+        try {
+            String ctr = stringRedisTemplate.execute(ctrUpdateScript, Arrays.asList(getCtrStatsKey(), getCtrRankKey()), args.toArray());
+            return ctr != null ? Double.valueOf(ctr) : null;
+        } catch (Exception e) {
+            log.error("更新点击率排行失败", e);
+            return null;
+        }
+    }
+
+    private double getPriorAlpha() {
+        return priorCtr * priorStrength;
+    }
+
+    private double getPriorBeta() {
+        return (1 - priorCtr) * priorStrength;
+    }
+
+    private String getCtrStatsKey() {
+        return circularList.getSubKey(AD_LIST, "ctr");
+    }
+
+    private String getCtrRankKey() {
+        return circularList.getSubKey(AD_LIST, "ctr:rank");
+    }
+
+    private static double toDouble(Object value) {
+        return value != null ? Double.parseDouble(value.toString()) : 0;
+    }
+
+    /**
+     * 类目列表名称, 所有类目列表共用 {ads} hash tag
+     */
+    private static String getCategoryList(String category) {
+        return "{" + AD_LIST + "}:" + category;
     }
 
     /**
      * 查看所有广告
+     * Redis不可用时返回本地快照(stale)
      */
-    public List<AdItem> getAllAds() {
-        return circularList.viewAll(AD_LIST, AdItem.class);
+    public ReadResult<List<AdItem>> getAllAds() {
+        return circularList.readAll(AD_LIST, AdItem.class);
     }
 
     /**
@@ -96,12 +445,12 @@ public class AdRotationService {
     public static List<AdItem> createSampleAds(int count) {
         List<AdItem> ads = new ArrayList<>();
 
-        String[] categories = {"电子产品", "服装鞋帽", "食品饮料", "家居用品", "运动健身"};
-
         for (int i = 1; i <= count; i++) {
+            String category = CATEGORIES.get(i % CATEGORIES.size());
             AdItem ad = AdItem.builder()
                     .adId("ad-" + i)
-                    .title(categories[i % categories.length] + "促销广告" + i)
+                    .category(category)
+                    .title(category + "促销广告" + i)
                     .content("限时优惠，立减" + (i * 10) + "元！")
                     .imageUrl("https://example.com/ads/ad" + i + "jpg")
                     .clickUrl("https://example.com/products/" + i)
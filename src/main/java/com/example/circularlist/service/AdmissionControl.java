@@ -0,0 +1,323 @@
+package com.example.circularlist.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 准入控制
+ * 集群剩余容量(各节点maxLoad - currentLoad之和)作为服务端原子预算保存在Redis中, 调用方按批预留、完成后归还;
+ * 预留带有租约, 超过lease-ttl仍未归还的预留自动失效, 没有回报完成的任务不会永久占用容量;
+ * 容量耗尽后在本地记录一个短暂的拒绝标记, 期间的请求不访问Redis直接拒绝, 拒绝的开销与请求速率无关;
+ * wait模式下请求进入有界的公平等待队列, 按到达顺序等待容量释放
+ @author lk
+ @create 2026/10/19-14:05
+ */
+@Slf4j
+@Component
+public class AdmissionControl {
+
+    /**
+     * 容量哈希中预留租约字段的前缀, 后面是时间桶的起始毫秒数
+     */
+    private static final String LEASE_PREFIX = "lease:";
+
+    @Autowired
+    private CircularList circularList;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisScript<List<Object>> capacityReserveScript;
+
+    @Autowired
+    private RedisScript<Long> capacityReleaseScript;
+
+    @Autowired
+    private RedisScript<Long> capacityAdjustScript;
+
+    /**
+     * 容量不足时的处理方式: reject(立即拒绝) / wait(排队等待)
+     */
+    @Value("${circular-list.admission.mode:reject}")
+    private String mode;
+
+    @Value("${circular-list.admission.max-wait:500ms}")
+    private Duration maxWait;
+
+    @Value("${circular-list.admission.max-waiters:64}")
+    private int maxWaiters;
+
+    /**
+     * 容量耗尽后本地直接拒绝的时长(毫秒)
+     */
+    @Value("${circular-list.admission.hint-millis:50}")
+    private long hintMillis;
+
+    /**
+     * 排队时重新检查容量的间隔(毫秒), 其他实例释放的容量只能通过轮询发现
+     */
+    @Value("${circular-list.admission.poll-millis:20}")
+    private long pollMillis;
+
+    /**
+     * 预留的租约时长, 超过后未归还的预留自动失效
+     */
+    @Value("${circular-list.admission.lease-ttl:5m}")
+    private Duration leaseTtl;
+
+    /**
+     * 租约的时间桶长度, 同一时间桶内的预留合并记录
+     */
+    @Value("${circular-list.admission.lease-bucket:10s}")
+    private Duration leaseBucket;
+
+    /**
+     * 各列表容量耗尽标记的截止时间
+     */
+    private final Map<String, Long> exhaustedUntil = new ConcurrentHashMap<>();
+
+    /**
+     * 公平锁, 同一时间只有队首的请求检查容量, 其余请求按到达顺序排队
+     */
+    private final ReentrantLock queue = new ReentrantLock(true);
+
+    private final ReentrantLock signalLock = new ReentrantLock();
+
+    private final Condition released = signalLock.newCondition();
+
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * 预留容量
+     * @param listName 列表名称
+     * @param count 请求预留的数量
+     * @return 实际预留的数量, 容量不足时可能小于请求数量, 为0表示被拒绝
+     */
+    public int acquire(String listName, int count) {
+        if (count <= 0) {
+            return 0;
+        }
+
+        boolean wait = "wait".equals(mode);
+
+        //已有请求在排队时新请求不插队
+        int granted = wait && waiters.get() > 0 ? 0 : tryReserve(listName, count);
+        if (granted > 0 || !wait) {
+            return rejectIfZero(granted);
+        }
+
+        if (waiters.incrementAndGet() > maxWaiters) {
+            waiters.decrementAndGet();
+            return rejectIfZero(0);
+        }
+
+        long deadline = System.nanoTime() + maxWait.toNanos();
+
+        try {
+            if (!queue.tryLock(maxWait.toNanos(), TimeUnit.NANOSECONDS)) {
+                return rejectIfZero(0);
+            }
+
+            try {
+                while (true) {
+                    granted = tryReserve(listName, count);
+                    long remaining = deadline - System.nanoTime();
+
+                    if (granted > 0 || remaining <= 0) {
+                        return rejectIfZero(granted);
+                    }
+
+                    awaitRelease(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(pollMillis)));
+                }
+            } finally {
+                queue.unlock();
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return rejectIfZero(0);
+        } finally {
+            waiters.decrementAndGet();
+        }
+    }
+
+    /**
+     * 归还容量, 并唤醒本实例排队的请求
+     * @param listName 列表名称
+     * @param count 归还的数量
+     * @return 归还后的剩余容量, 没有容量记录或失败时返回-1
+     */
+    public long release(String listName, int count) {
+        if (count <= 0) {
+            return -1;
+        }
+
+        long available = -1;
+
+        try {
+            Long result = stringRedisTemplate.execute(capacityReleaseScript,
+                    Collections.singletonList(getCapacityKey(listName)), String.valueOf(count), String.valueOf(leaseTtl.toMillis()));
+            available = result != null ? result : -1;
+
+        } catch (Exception e) {
+            log.error("归还容量失败: listName={}, count={}", listName, count, e);
+        }
+
+        exhaustedUntil.remove(listName);
+
+        signalLock.lock();
+        try {
+            released.signalAll();
+        } finally {
+            signalLock.unlock();
+        }
+
+        return available;
+    }
+
+    /**
+     * 重置总容量, 已预留数量清零
+     */
+    public void resetCapacity(String listName, long total) {
+        try {
+            stringRedisTemplate.execute(capacityAdjustScript, Collections.singletonList(getCapacityKey(listName)),
+                    "set", String.valueOf(total));
+            exhaustedUntil.remove(listName);
+
+            log.info("集群容量已重置: listName={}, total={}", listName, total);
+
+        } catch (Exception e) {
+            log.error("重置集群容量失败: listName={}", listName, e);
+        }
+    }
+
+    /**
+     * 增减总容量(节点加入或移除)
+     * 没有容量记录时不创建(没有记录表示不限制), 总容量不会减到0以下
+     */
+    public void adjustCapacity(String listName, long delta) {
+        if (delta == 0) {
+            return;
+        }
+
+        try {
+            Long total = stringRedisTemplate.execute(capacityAdjustScript, Collections.singletonList(getCapacityKey(listName)),
+                    "add", String.valueOf(delta));
+            if (delta > 0) {
+                exhaustedUntil.remove(listName);
+            }
+
+            log.debug("集群容量已调整: listName={}, delta={}, total={}", listName, delta, total);
+
+        } catch (Exception e) {
+            log.error("调整集群容量失败: listName={}, delta={}", listName, delta, e);
+        }
+    }
+
+    /**
+     * 容量和准入监控指标
+     */
+    public Map<String, Object> getStats(String listName) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", mode);
+
+        try {
+            Map<Object, Object> capacity = stringRedisTemplate.opsForHash().entries(getCapacityKey(listName));
+            long total = Long.parseLong(String.valueOf(capacity.getOrDefault("total", "0")));
+
+            //未过期租约的预留之和
+            long used = 0;
+            long expiredBefore = System.currentTimeMillis() - leaseTtl.toMillis();
+            for (Map.Entry<Object, Object> field : capacity.entrySet()) {
+                String name = field.getKey().toString();
+                if (name.startsWith(LEASE_PREFIX) && Long.parseLong(name.substring(LEASE_PREFIX.length())) > expiredBefore) {
+                    used += Long.parseLong(field.getValue().toString());
+                }
+            }
+
+            stats.put("tracked", capacity.containsKey("total"));
+            stats.put("total", total);
+            stats.put("used", used);
+            stats.put("available", Math.max(total - used, 0));
+
+        } catch (Exception e) {
+            log.error("获取集群容量失败: listName={}", listName, e);
+        }
+
+        stats.put("leaseTtl", leaseTtl.toString());
+        stats.put("waiters", waiters.get());
+        stats.put("rejected", rejected.get());
+        return stats;
+    }
+
+    /**
+     * 执行一次预留
+     * 容量耗尽标记有效期内不访问Redis; 没有容量记录或Redis不可用时不限制
+     */
+    private int tryReserve(String listName, int count) {
+        long now = System.currentTimeMillis();
+        Long until = exhaustedUntil.get(listName);
+
+        if (until != null && now < until) {
+            return 0;
+        }
+
+        try {
+            List<?> result = stringRedisTemplate.execute(capacityReserveScript, Collections.singletonList(getCapacityKey(listName)),
+                    String.valueOf(count), String.valueOf(leaseTtl.toMillis()), String.valueOf(leaseBucket.toMillis()));
+
+            long granted = ((Number) result.get(0)).longValue();
+            if (granted < 0) {
+                return count;
+            }
+
+            if (granted == 0) {
+                exhaustedUntil.put(listName, now + hintMillis);
+            }
+            return (int) granted;
+
+        } catch (Exception e) {
+            log.error("预留容量失败, 本次不做准入控制: listName={}", listName, e);
+            return count;
+        }
+    }
+
+    private void awaitRelease(long nanos) throws InterruptedException {
+        signalLock.lock();
+        try {
+            released.awaitNanos(nanos);
+        } finally {
+            signalLock.unlock();
+        }
+    }
+
+    private int rejectIfZero(int granted) {
+        if (granted == 0) {
+            rejected.incrementAndGet();
+        }
+        return granted;
+    }
+
+    private String getCapacityKey(String listName) {
+        return circularList.getSubKey(listName, "capacity");
+    }
+}
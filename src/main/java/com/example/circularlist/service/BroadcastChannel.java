@@ -0,0 +1,350 @@
+package com.example.circularlist.service;
+
+import com.example.circularlist.config.BlockingCommandPool;
+import com.example.circularlist.model.BroadcastMessage;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.StreamMessage;
+import io.lettuce.core.XAddArgs;
+import io.lettuce.core.XReadArgs;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 广播频道
+ * 循环列表每轮只把一个元素交给一个调用方, 广播场景下每个订阅方都需要收到全部消息,
+ * 因此基于Redis Stream实现: 消息追加到有长度上限的Stream, 每个订阅方对应一个消费组,
+ * 按批读取并确认, 未确认的消息可以被重新认领
+ @author lk
+ @create 2026/10/19-11:52
+ */
+@Slf4j
+@Service
+public class BroadcastChannel {
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private BlockingCommandPool blockingCommandPool;
+
+    @Value("${circular-list.broadcast.prefix:circular:broadcast:}")
+    private String streamPrefix;
+
+    @Value("${circular-list.broadcast.max-length:100000}")
+    private long maxLength;
+
+    @Value("${spring.redis.timeout:5000ms}")
+    private Duration commandTimeout;
+
+    private static final String FIELD_PAYLOAD = "payload";
+
+    private static final String FIELD_TIMESTAMP = "ts";
+
+    /**
+     * 已确认存在的消费组, 避免每次读取都执行XGROUP CREATE
+     */
+    private final Set<String> knownGroups = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 获取Stream Key(频道名作为hash tag)
+     */
+    public String getStreamKey(String channel) {
+        return streamPrefix + CircularList.hashTag(channel);
+    }
+
+    /**
+     * 发布消息
+     * 追加时按近似长度裁剪, Stream占用的内存有上限
+     * @param channel 频道名称
+     * @param payload 消息内容
+     * @return 消息ID
+     */
+    public String publish(String channel, String payload) {
+        List<String> ids = publishBatch(channel, Collections.singletonList(payload));
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+
+    /**
+     * 批量发布消息(一次往返)
+     * 在共享连接上连续发送XADD再统一等待结果, 命令由写合并一次写出;
+     * 不使用executePipelined, 关闭连接池时它会为每次调用新建独占连接
+     * @param channel 频道名称
+     * @param payloads 消息内容
+     * @return 消息ID列表
+     */
+    public List<String> publishBatch(String channel, List<String> payloads) {
+        byte[] key = getStreamKey(channel).getBytes(StandardCharsets.UTF_8);
+        XAddArgs args = XAddArgs.Builder.maxlen(maxLength).approximateTrimming();
+        byte[] timestamp = String.valueOf(System.currentTimeMillis()).getBytes(StandardCharsets.UTF_8);
+
+        try {
+            List<String> ids = stringRedisTemplate.execute((RedisCallback<List<String>>) connection -> {
+                @SuppressWarnings("unchecked")
+                RedisClusterAsyncCommands<byte[], byte[]> commands = (RedisClusterAsyncCommands<byte[], byte[]>) connection.getNativeConnection();
+
+                List<RedisFuture<String>> futures = new ArrayList<>(payloads.size());
+                for (String payload : payloads) {
+                    Map<byte[], byte[]> body = new HashMap<>();
+                    body.put(FIELD_PAYLOAD.getBytes(StandardCharsets.UTF_8), payload.getBytes(StandardCharsets.UTF_8));
+                    body.put(FIELD_TIMESTAMP.getBytes(StandardCharsets.UTF_8), timestamp);
+                    futures.add(commands.xadd(key, args, body));
+                }
+
+                if (!LettuceFutures.awaitAll(commandTimeout, futures.toArray(new RedisFuture<?>[0]))) {
+                    throw new QueryTimeoutException("XADD超时: count=" + futures.size());
+                }
+
+                List<String> results = new ArrayList<>(futures.size());
+                for (RedisFuture<String> future : futures) {
+                    results.add(future.toCompletableFuture().join());
+                }
+                return results;
+            });
+
+            log.info("广播消息已发布: channel={}, count={}", channel, ids.size());
+
+            return ids;
+
+        } catch (Exception e) {
+            log.error("发布广播消息失败: channel={}", channel, e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * 订阅方批量读取新消息
+     * 每个订阅方使用独立的消费组, 因此都能收到全部消息; 同一消费组内的多个消费者分摊消息
+     * @param channel 频道名称
+     * @param group 消费组(订阅方)
+     * @param consumer 消费者名称
+     * @param count 最多读取数量
+     * @param blockMillis 没有新消息时的阻塞时间(毫秒), <=0表示不阻塞
+     * @return 消息列表, 读取后需要ack
+     */
+    public List<BroadcastMessage> read(String channel, String group, String consumer, int count, long blockMillis) {
+        String key = getStreamKey(channel);
+
+        try {
+            ensureGroup(key, group, ReadOffset.latest());
+
+            try {
+                return readOnce(channel, key, group, consumer, count, blockMillis);
+            } catch (RuntimeException e) {
+                if (!isNoGroup(e)) {
+                    throw e;
+                }
+
+                //Stream被删除(淘汰、Redis数据丢失)后消费组随之消失, 重新创建;
+                //新Stream中的消息都是删除之后发布的, 从头开始读取
+                log.warn("广播消费组不存在, 重新创建: key={}, group={}", key, group);
+                knownGroups.remove(key + "|" + group);
+                ensureGroup(key, group, ReadOffset.from("0"));
+                return readOnce(channel, key, group, consumer, count, blockMillis);
+            }
+
+        } catch (Exception e) {
+            log.error("读取广播消息失败: channel={}, group={}, consumer={}", channel, group, consumer, e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * 确认消息已处理
+     * @return 确认的消息数量
+     */
+    public long ack(String channel, String group, List<String> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        Long acked = stringRedisTemplate.opsForStream().acknowledge(getStreamKey(channel), group, ids.toArray(new String[0]));
+
+        log.debug("广播消息已确认: channel={}, group={}, acked={}", channel, group, acked);
+
+        return acked != null ? acked : 0;
+    }
+
+    /**
+     * 认领空闲超时的未确认消息
+     * 消费者崩溃后, 其已读取未确认的消息由其他消费者接管
+     * @param channel 频道名称
+     * @param group 消费组
+     * @param consumer 接管的消费者
+     * @param minIdleMillis 最小空闲时间(毫秒)
+     * @param count 最多认领数量
+     * @return 认领到的消息
+     */
+    public List<BroadcastMessage> recoverPending(String channel, String group, String consumer, long minIdleMillis, int count) {
+        String key = getStreamKey(channel);
+
+        try {
+            PendingMessages pending = stringRedisTemplate.opsForStream().pending(key, group, Range.unbounded(), count);
+
+            List<RecordId> idle = new ArrayList<>();
+            for (PendingMessage message : pending) {
+                if (message.getElapsedTimeSinceLastDelivery().toMillis() >= minIdleMillis) {
+                    idle.add(message.getId());
+                }
+            }
+
+            if (idle.isEmpty()) {
+                return new ArrayList<>();
+            }
+
+            List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                    .claim(key, group, consumer, Duration.ofMillis(minIdleMillis), idle.toArray(new RecordId[0]));
+
+            log.info("已认领未确认的广播消息: channel={}, group={}, consumer={}, count={}", channel, group, consumer, records.size());
+
+            return toMessages(channel, records);
+
+        } catch (Exception e) {
+            log.error("认领广播消息失败: channel={}, group={}", channel, group, e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * 频道中保留的消息数量
+     */
+    public long size(String channel) {
+        Long size = stringRedisTemplate.opsForStream().size(getStreamKey(channel));
+        return size != null ? size : 0;
+    }
+
+    /**
+     * 创建消费组, 新订阅方从当前最新位置开始接收
+     * 已创建的消费组缓存在本地, 读取时收到NOGROUP会移出缓存并重新创建
+     * @param offset 消费组的起始位置
+     */
+    private void ensureGroup(String key, String group, ReadOffset offset) {
+        if (knownGroups.contains(key + "|" + group)) {
+            return;
+        }
+
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands()
+                    .xGroupCreate(key.getBytes(StandardCharsets.UTF_8), group, offset, true));
+            log.info("广播消费组已创建: key={}, group={}", key, group);
+        } catch (RedisSystemException e) {
+            //BUSYGROUP: 消费组已存在
+            if (e.getMessage() == null || !e.getMessage().contains("BUSYGROUP")) {
+                throw e;
+            }
+        }
+
+        knownGroups.add(key + "|" + group);
+    }
+
+    /**
+     * 按消费组读取一次, blockMillis>0时阻塞读取
+     */
+    private List<BroadcastMessage> readOnce(String channel, String key, String group, String consumer, int count, long blockMillis) {
+        if (blockMillis > 0) {
+            return readBlocking(channel, key, group, consumer, count, blockMillis);
+        }
+
+        StreamOffset<String> offset = StreamOffset.create(key, ReadOffset.lastConsumed());
+        @SuppressWarnings("unchecked")
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .read(Consumer.from(group, consumer), StreamReadOptions.empty().count(count), offset);
+
+        return toMessages(channel, records);
+    }
+
+    /**
+     * 异常(含cause)是否为消费组不存在
+     */
+    private static boolean isNoGroup(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("NOGROUP")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 阻塞读取走阻塞命令连接池, 不占用共享连接
+     */
+    private List<BroadcastMessage> readBlocking(String channel, String key, String group, String consumer, int count, long blockMillis) {
+        io.lettuce.core.Consumer<byte[]> from = io.lettuce.core.Consumer.from(group.getBytes(StandardCharsets.UTF_8), consumer.getBytes(StandardCharsets.UTF_8));
+        XReadArgs.StreamOffset<byte[]> offset = XReadArgs.StreamOffset.lastConsumed(key.getBytes(StandardCharsets.UTF_8));
+
+        List<StreamMessage<byte[], byte[]>> records = blockingCommandPool.execute(Duration.ofMillis(blockMillis), commands -> {
+            @SuppressWarnings("unchecked")
+            List<StreamMessage<byte[], byte[]>> result = commands.xreadgroup(from, XReadArgs.Builder.count(count).block(blockMillis), offset);
+            return result;
+        });
+
+        List<BroadcastMessage> messages = new ArrayList<>();
+
+        for (StreamMessage<byte[], byte[]> record : records) {
+            BroadcastMessage message = BroadcastMessage.builder()
+                    .id(record.getId())
+                    .channel(channel)
+                    .build();
+
+            for (Map.Entry<byte[], byte[]> field : record.getBody().entrySet()) {
+                String name = new String(field.getKey(), StandardCharsets.UTF_8);
+                String value = new String(field.getValue(), StandardCharsets.UTF_8);
+                if (FIELD_PAYLOAD.equals(name)) {
+                    message.setPayload(value);
+                } else if (FIELD_TIMESTAMP.equals(name)) {
+                    message.setTimestamp(Long.valueOf(value));
+                }
+            }
+
+            messages.add(message);
+        }
+
+        return messages;
+    }
+
+    private List<BroadcastMessage> toMessages(String channel, List<MapRecord<String, Object, Object>> records) {
+        List<BroadcastMessage> messages = new ArrayList<>();
+
+        if (records == null) {
+            return messages;
+        }
+
+        for (MapRecord<String, Object, Object> record : records) {
+            Object timestamp = record.getValue().get(FIELD_TIMESTAMP);
+            messages.add(BroadcastMessage.builder()
+                    .id(record.getId().getValue())
+                    .channel(channel)
+                    .payload((String) record.getValue().get(FIELD_PAYLOAD))
+                    .timestamp(timestamp != null ? Long.valueOf(timestamp.toString()) : null)
+                    .build());
+        }
+
+        return messages;
+    }
+}
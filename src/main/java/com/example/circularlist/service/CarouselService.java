@@ -0,0 +1,176 @@
+package com.example.circularlist.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 定时轮播服务
+ * 列表按固定时间片推进, 而不是每次请求推进一次
+ * 所有实例都按对齐的tick调度, 由持有leader锁的实例推进轮播游标并发布当前元素,
+ * 读取方用一次GET获取当前元素, 并在本地缓存到下一个tick
+ * 轮播使用独立的游标, 不旋转列表本身; 但轮播不扣减节奏令牌、预算, 也不做频次控制,
+ * 因此配置为轮播的列表不能同时通过/ads/next等按请求推进的接口展示
+ @author lk
+ @create 2026/10/19-10:48
+ */
+@Slf4j
+@Service
+public class CarouselService {
+
+    @Autowired
+    private CircularList circularList;
+
+    @Autowired
+    private ListRegistry listRegistry;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ObjectMapper mapper;
+
+    @Autowired
+    private RedisScript<Long> carouselTickScript;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    @Value("${circular-list.carousel.lists:}")
+    private List<String> lists;
+
+    @Value("${circular-list.carousel.tick-seconds:10}")
+    private long tickSeconds;
+
+    /**
+     * 上一个tick还没推进时, 读取方的重试间隔(毫秒)
+     */
+    @Value("${circular-list.carousel.retry-millis:200}")
+    private long retryMillis;
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    /**
+     * 本地缓存的当前元素
+     */
+    private final Map<String, Current> cache = new ConcurrentHashMap<>();
+
+    /**
+     * 当前元素及本地缓存有效期
+     */
+    private static class Current {
+        private final Object item;
+        private final long validUntil;
+
+        private Current(Object item, long validUntil) {
+            this.item = item;
+            this.validUntil = validUntil;
+        }
+    }
+
+    @PostConstruct
+    public void startTicks() {
+        long tickMillis = getTickMillis();
+        //对齐到下一个tick边界, 各实例的tick时间一致
+        long start = (System.currentTimeMillis() / tickMillis + 1) * tickMillis;
+
+        for (String listName : lists) {
+            if (listName.trim().isEmpty()) {
+                continue;
+            }
+            taskScheduler.scheduleAtFixedRate(() -> tick(listName.trim()), Instant.ofEpochMilli(start), Duration.ofMillis(tickMillis));
+            log.info("定时轮播已启动: listName={}, tickSeconds={}, instanceId={}", listName.trim(), tickSeconds, instanceId);
+        }
+    }
+
+    /**
+     * 推进一次轮播游标(只有leader实际推进)
+     */
+    public void tick(String listName) {
+        long tickMillis = getTickMillis();
+        long tickNo = System.currentTimeMillis() / tickMillis;
+
+        try {
+            Long advanced = stringRedisTemplate.execute(carouselTickScript,
+                    Arrays.asList(circularList.getListKey(listName),
+                            circularList.getSubKey(listName, "carousel:leader"),
+                            circularList.getSubKey(listName, "carousel:current"),
+                            circularList.getSubKey(listName, "carousel:cursor")),
+                    instanceId, String.valueOf(tickMillis * 3), String.valueOf(tickNo), String.valueOf(tickMillis * 3));
+
+            if (advanced != null && advanced > 0) {
+                //轮播的读取只GET当前元素, 不经过列表本身, 由leader推进时记录访问, 避免列表被当作空闲淘汰
+                listRegistry.touch(listName);
+                log.debug("定时轮播已推进: listName={}, tick={}", listName, tickNo);
+            }
+
+        } catch (Exception e) {
+            log.error("定时轮播推进失败: listName={}", listName, e);
+        }
+    }
+
+    /**
+     * 获取当前轮播的元素
+     * 本地缓存到下一个tick, 读取次数与流量无关
+     * @param listName 列表名称
+     * @param clazz 元素类型
+     * @return 当前元素, 还没有发布时返回null
+     * @param <T> 类型
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getCurrent(String listName, Class<T> clazz) {
+        long now = System.currentTimeMillis();
+        Current current = cache.get(listName);
+
+        if (current != null && now < current.validUntil) {
+            return (T) current.item;
+        }
+
+        long tickMillis = getTickMillis();
+        long tickNo = now / tickMillis;
+
+        try {
+            String value = stringRedisTemplate.opsForValue().get(circularList.getSubKey(listName, "carousel:current"));
+
+            T item = null;
+            long validUntil = now + retryMillis;
+
+            if (value != null) {
+                int separator = value.indexOf('|');
+                long publishedTick = Long.parseLong(value.substring(0, separator));
+                item = mapper.readValue(value.substring(separator + 1), clazz);
+
+                //当前tick已发布时缓存到下一个tick, 否则短暂缓存后重试
+                if (publishedTick >= tickNo) {
+                    validUntil = (publishedTick + 1) * tickMillis;
+                }
+            }
+
+            cache.put(listName, new Current(item, validUntil));
+
+            return item;
+
+        } catch (Exception e) {
+            log.error("获取当前轮播元素失败: listName={}", listName, e);
+            return current != null ? (T) current.item : null;
+        }
+    }
+
+    private long getTickMillis() {
+        return Math.max(1, tickSeconds) * 1000;
+    }
+}
@@ -1,15 +1,32 @@
 package com.example.circularlist.service;
 
+import com.example.circularlist.config.BlockingCommandPool;
+import com.example.circularlist.config.CircuitBreaker;
+import com.example.circularlist.config.LatencyAwareReads;
+import com.example.circularlist.model.ReadResult;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 /**
  * 循环列表核心实现
@@ -27,17 +44,111 @@ public class CircularList {
     @Autowired
     private ObjectMapper mapper;
 
+    @Autowired
+    private RedisScript<List<Object>> rotateBatchScript;
+
+    @Autowired
+    private RedisScript<List<Object>> rotateMultiScript;
+
+    @Autowired
+    private RedisScript<List<Object>> shuffleNextScript;
+
+    @Autowired
+    private RedisScript<List<Object>> listMutateScript;
+
+    @Autowired
+    private RedisScript<List<Object>> listChangesScript;
+
     @Value("${circular-list.list-prefix:circular:list:}")
     private String listPrefix;
 
     @Value("${circular-list.block-timeout:5}")
     private long blockTimeout;
 
+    /**
+     * 使用洗牌轮询模式的列表
+     */
+    @Value("${circular-list.shuffle.lists:}")
+    private Set<String> shuffleLists;
+
+    /**
+     * 洗牌轮询的基础种子, 为空时使用列表Key
+     */
+    @Value("${circular-list.shuffle.seed:}")
+    private String shuffleSeed;
+
+    /**
+     * 每个列表保留的变更记录数量(近似), 更早的版本读取增量时返回全量
+     */
+    @Value("${circular-list.changelog.max-length:1000}")
+    private long changelogMaxLength;
+
+    @Value("${circular-list.rotation.breaker.failure-threshold:3}")
+    private int rotationFailureThreshold;
+
+    @Value("${circular-list.rotation.breaker.open-duration:5s}")
+    private Duration rotationOpenDuration;
+
+    /**
+     * 轮转路径(getNext/getNextNonBlocking/getNextBatch)每个列表一个熔断器:
+     * 连续失败后直接从快照获取, Redis不可用时不再每次等满命令超时(阻塞获取还要加上阻塞时间)
+     */
+    private final Map<String, CircuitBreaker> rotationBreakers = new ConcurrentHashMap<>();
+
+    @Autowired
+    private ListSnapshotStore snapshotStore;
+
+    @Autowired
+    private BlockingCommandPool blockingCommandPool;
+
+    @Autowired
+    private ListRegistry listRegistry;
+
+    @Autowired
+    private LatencyAwareReads latencyAwareReads;
+
+    /**
+     * 列表附属Key的后缀(版本号除外), 淘汰列表时一并删除; 频控时间桶(freq:*)带有过期时间, 不需要删除
+     * 新增附属Key时需要加入这里
+     */
+    private static final List<String> SUB_KEY_SUFFIXES = Arrays.asList(
+            "changes", "shuffle:cursor", "shuffle:index", "capacity", "pacing", "ctr", "ctr:rank",
+            "carousel:leader", "carousel:current", "carousel:cursor");
+
+    /**
+     * 本实例访问过的列表, 定期保存快照
+     */
+    private final Set<String> knownLists = ConcurrentHashMap.newKeySet();
+
     /**
      * 获取列表Key
+     * 列表名作为hash tag, 同一个列表的所有Key落在Redis Cluster的同一个slot,
+     * 多Key脚本不会出现跨slot错误; 列表名自带hash tag时(如 {ads}:电子产品)保持不变,
+     * 用于让多个列表落在同一个slot
      */
-    private String getListKey(String listName) {
-        return listPrefix + listName;
+    public String getListKey(String listName) {
+        return listPrefix + hashTag(listName);
+    }
+
+    /**
+     * 为名称加上hash tag
+     */
+    public static String hashTag(String name) {
+        int open = name.indexOf('{');
+        if (open >= 0) {
+            int close = name.indexOf('}', open + 1);
+            if (close > open + 1) {
+                return name;
+            }
+        }
+        return "{" + name + "}";
+    }
+
+    /**
+     * 获取列表附属Key(计数器、时间桶等)
+     */
+    public String getSubKey(String listName, String suffix) {
+        return getListKey(listName) + ":" + suffix;
     }
 
     /**
@@ -49,23 +160,26 @@ public class CircularList {
      * @param <T> 类型
      */
     public <T> long initList(String listName, List<T> items) {
-        String key = getListKey(listName);
-
         try {
-            //清空现有列表
-            redisTemplate.delete(key);
-
-            //添加元素
+            List<String> itemJsons = new ArrayList<>();
             for (T item : items) {
-                String itemJson = mapper.writeValueAsString(item);
-                redisTemplate.opsForList().rightPush(key, itemJson);
+                itemJsons.add(mapper.writeValueAsString(item));
+            }
+
+            //超出命名空间配额时保留现有列表
+            if (!listRegistry.reserve(listName, itemJsons, true)) {
+                return 0;
             }
 
-            Long size = redisTemplate.opsForList().size(key);
+            //替换全部元素
+            long size = mutate(listName, "init", itemJsons);
+
+            knownLists.add(listName);
+            snapshotStore.save(listName, itemJsons);
 
             log.info("循环列表已初始化: listName={}, size={}", listName, size);
 
-            return size != null ? size : 0;
+            return size;
 
         } catch (Exception e) {
             log.error("初始化循环列表失败: listName={}", listName, e);
@@ -82,11 +196,36 @@ public class CircularList {
      * @param <T> 类型
      */
     public <T> T getNext(String listName, Class<T> clazz) {
+        //洗牌模式不修改列表, 不需要阻塞等待
+        if (isShuffled(listName)) {
+            return getNextNonBlocking(listName, clazz);
+        }
+
         String key = getListKey(listName);
+        CircuitBreaker breaker = getRotationBreaker(listName);
+        if (!breaker.allowRequest()) {
+            return pickFromSnapshot(listName, clazz);
+        }
 
         try {
-            //BRPOPLPUSH: 从右边弹出，推入左边(同一个列表，实现循环)
-            Object result = redisTemplate.opsForList().rightPopAndLeftPush(key, key, blockTimeout, TimeUnit.SECONDS);
+            knownLists.add(listName);
+            listRegistry.touch(listName);
+
+            //列表有元素时直接用RPOPLPUSH返回, 不占用阻塞连接; 数据丢失时先回填, 不用等到阻塞超时
+            Object result = redisTemplate.opsForList().rightPopAndLeftPush(key, key);
+            if (result == null && restoreFromSnapshot(listName)) {
+                result = redisTemplate.opsForList().rightPopAndLeftPush(key, key);
+            }
+
+            if (result == null) {
+                //BRPOPLPUSH: 从右边弹出，推入左边(同一个列表，实现循环)
+                //阻塞命令使用独立连接池, 不占用共享连接
+                byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+                byte[] raw = blockingCommandPool.execute(Duration.ofSeconds(blockTimeout),
+                        commands -> commands.brpoplpush(blockTimeout, rawKey, rawKey));
+                result = raw != null ? redisTemplate.getValueSerializer().deserialize(raw) : null;
+            }
+            breaker.onSuccess();
 
             if (result == null) {
                 log.debug("BRPOPLPUSH超时，列表为空: listName={}", listName);
@@ -100,8 +239,9 @@ public class CircularList {
             return item;
 
         } catch (Exception e) {
+            breaker.onFailure();
             log.error("循环获取元素失败: listName={}", listName, e);
-            return null;
+            return pickFromSnapshot(listName, clazz);
         }
     }
 
@@ -115,14 +255,27 @@ public class CircularList {
      */
     public <T> T getNextNonBlocking(String listName, Class<T> clazz) {
         String key = getListKey(listName);
+        CircuitBreaker breaker = getRotationBreaker(listName);
+        if (!breaker.allowRequest()) {
+            return pickFromSnapshot(listName, clazz);
+        }
 
         try {
+            if (isShuffled(listName)) {
+                List<T> items = rotate(listName, 1, clazz);
+                breaker.onSuccess();
+                return !items.isEmpty() ? items.get(0) : restoreAndPick(listName, clazz);
+            }
+
             //RPOPLPUSH:非阻塞版本
+            knownLists.add(listName);
+            listRegistry.touch(listName);
             Object result = redisTemplate.opsForList().rightPopAndLeftPush(key, key);
+            breaker.onSuccess();
 
             if (result == null) {
                 log.debug("列表为空: listName={}", listName);
-                return null;
+                return restoreAndPick(listName, clazz);
             }
 
             T item = mapper.readValue(result.toString(), clazz);
@@ -132,14 +285,16 @@ public class CircularList {
             return item;
 
         } catch (Exception e) {
+            breaker.onFailure();
             log.error("非阻塞获取元素失败: listName={}", listName, e);
-            return null;
+            return pickFromSnapshot(listName, clazz);
         }
 
     }
 
     /**
      * 批量获取元素(循环多次)
+     * 在一次脚本调用中连续执行count次RPOPLPUSH
      * @param listName 列表名称
      * @param count 获取数量
      * @param clazz 元素类型
@@ -147,14 +302,37 @@ public class CircularList {
      * @param <T> 类型
      */
     public <T> List<T> getNextBatch(String listName, int count, Class<T> clazz) {
-        List<T> items = new ArrayList<>();
+        List<T> items;
+        CircuitBreaker breaker = getRotationBreaker(listName);
 
-        for (int i = 0; i < count; i++) {
-            T item = getNextNonBlocking(listName, clazz);
-            if (item != null) {
+        try {
+            if (!breaker.allowRequest()) {
+                throw new IllegalStateException("轮转已熔断: listName=" + listName);
+            }
+
+            try {
+                items = rotate(listName, count, clazz);
+            } catch (Exception e) {
+                breaker.onFailure();
+                throw e;
+            }
+            breaker.onSuccess();
+
+            //列表数据丢失时先回填再获取
+            if (items.isEmpty() && restoreFromSnapshot(listName)) {
+                items = rotate(listName, count, clazz);
+            }
+
+        } catch (Exception e) {
+            //Redis不可用或熔断中时从快照获取
+            log.warn("批量获取元素失败, 使用快照: listName={}, error={}", listName, e.getMessage());
+            items = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                T item = pickFromSnapshot(listName, clazz);
+                if (item == null) {
+                    break;
+                }
                 items.add(item);
-            } else {
-                break;
             }
         }
 
@@ -163,19 +341,169 @@ public class CircularList {
         return items;
     }
 
+    /**
+     * 列表是否使用洗牌轮询模式
+     */
+    public boolean isShuffled(String listName) {
+        return shuffleLists.contains(listName);
+    }
+
+    /**
+     * 洗牌轮询获取元素
+     * 每一轮按 种子+轮次 生成的伪随机排列遍历列表, 每个元素每轮恰好返回一次;
+     * 只递增游标并按下标读取, 不修改列表, 排列也不需要保存;
+     * 按下标读取使用脚本维护的Hash索引(每个元素O(1)), 成员变化后的第一次调用重建索引(O(N))
+     * @param listName 列表名称
+     * @param count 获取数量
+     * @param clazz 元素类型
+     * @return 元素列表
+     * @param <T> 类型
+     */
+    public <T> List<T> getNextShuffled(String listName, int count, Class<T> clazz) {
+        return getBatchByScript(listName, shuffleNextScript, getShuffleKeys(listName), clazz, getShuffleSeed(listName), count);
+    }
+
+    /**
+     * 多个列表各推进一次, 一次脚本调用返回每个列表的一个元素
+     * 多个列表需要使用相同的hash tag(如 {ads}:电子产品), 集群模式下才能在一个脚本中执行;
+     * 脚本执行失败(如跨slot)时逐个列表获取
+     * @param listNames 列表名称
+     * @param distinct 各列表返回的元素是否不重复
+     * @param clazz 元素类型
+     * @return 与listNames一一对应的元素, 列表为空时对应位置为null
+     * @param <T> 类型
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> getNextFromEach(List<String> listNames, boolean distinct, Class<T> clazz) {
+        List<String> keys = new ArrayList<>();
+        for (String listName : listNames) {
+            knownLists.add(listName);
+            listRegistry.touch(listName);
+            keys.add(getListKey(listName));
+        }
+
+        List<T> items = new ArrayList<>();
+
+        try {
+            List<Object> rawItems = redisTemplate.execute(rotateMultiScript, RedisSerializer.string(),
+                    (RedisSerializer<List<Object>>) redisTemplate.getValueSerializer(), keys, distinct ? "1" : "0");
+
+            for (int i = 0; i < listNames.size(); i++) {
+                Object rawItem = rawItems != null && i < rawItems.size() ? rawItems.get(i) : null;
+                items.add(rawItem != null ? mapper.readValue(rawItem.toString(), clazz) : null);
+            }
+
+            log.debug("多列表循环获取: listNames={}, distinct={}", listNames, distinct);
+
+            return items;
+
+        } catch (Exception e) {
+            log.warn("多列表脚本获取失败, 逐个列表获取: listNames={}, error={}", listNames, e.getMessage());
+        }
+
+        items.clear();
+        for (String listName : listNames) {
+            items.add(getNextNonBlocking(listName, clazz));
+        }
+        return items;
+    }
+
+    /**
+     * 通过服务端脚本批量获取元素
+     * 脚本的KEYS[1]固定为列表Key, 旋转和过滤在一次往返中完成
+     * @param listName 列表名称
+     * @param script 脚本, 返回选中的元素列表
+     * @param extraKeys 脚本用到的其他Key
+     * @param clazz 元素类型
+     * @param args 脚本参数
+     * @return 元素列表
+     * @param <T> 类型
+     */
+    public <T> List<T> getBatchByScript(String listName, RedisScript<List<Object>> script, List<String> extraKeys, Class<T> clazz, Object... args) {
+        try {
+            return executeScript(listName, script, extraKeys, clazz, args);
+        } catch (Exception e) {
+            log.error("脚本获取元素失败: listName={}", listName, e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * 通过会移除元素的服务端脚本获取元素
+     * 脚本的KEYS[1..3]固定为 列表、版本号、变更日志, ARGV[1]固定为变更日志最大长度, 之后才是extraKeys和args;
+     * 脚本每移出一个元素都要像list_mutate.lua一样递增版本号并追加remove记录, 增量同步才能看到这些移除;
+     * 返回 {选中的元素, 被移出列表的元素}, 被移出的元素同步从列表登记中扣减
+     * @param listName 列表名称
+     * @param script 脚本
+     * @param extraKeys 脚本用到的其他Key
+     * @param clazz 元素类型
+     * @param args 脚本参数
+     * @return 选中的元素
+     * @param <T> 类型
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> takeByScript(String listName, RedisScript<List<Object>> script, List<String> extraKeys, Class<T> clazz, Object... args) {
+        knownLists.add(listName);
+        listRegistry.touch(listName);
+
+        List<String> keys = new ArrayList<>();
+        keys.add(getListKey(listName));
+        keys.add(getVersionKey(listName));
+        keys.add(getChangesKey(listName));
+        keys.addAll(extraKeys);
+
+        String[] scriptArgs = new String[args.length + 1];
+        scriptArgs[0] = String.valueOf(changelogMaxLength);
+        for (int i = 0; i < args.length; i++) {
+            scriptArgs[i + 1] = String.valueOf(args[i]);
+        }
+
+        List<T> items = new ArrayList<>();
+
+        try {
+            List<Object> result = redisTemplate.execute(script, RedisSerializer.string(),
+                    (RedisSerializer<List<Object>>) redisTemplate.getValueSerializer(), keys, (Object[]) scriptArgs);
+
+            if (result == null || result.size() < 2) {
+                return items;
+            }
+
+            for (Object rawItem : (List<?>) result.get(0)) {
+                items.add(mapper.readValue(rawItem.toString(), clazz));
+            }
+
+            List<String> removed = new ArrayList<>();
+            for (Object rawItem : (List<?>) result.get(1)) {
+                removed.add(rawItem.toString());
+            }
+            if (!removed.isEmpty()) {
+                listRegistry.release(listName, removed);
+                log.info("脚本移出列表元素: listName={}, removed={}", listName, removed.size());
+            }
+
+        } catch (Exception e) {
+            log.error("脚本获取元素失败: listName={}", listName, e);
+        }
+
+        return items;
+    }
+
     /**
      * 添加元素到循环列表
      */
     public <T> boolean addItem(String listName, T item) {
-        String key = getListKey(listName);
-
         try {
             String itemJson = mapper.writeValueAsString(item);
-            Long result = redisTemplate.opsForList().rightPush(key, itemJson);
+            if (!listRegistry.reserve(listName, Collections.singletonList(itemJson), false)) {
+                return false;
+            }
+
+            long added = mutate(listName, "add", Collections.singletonList(itemJson));
+            knownLists.add(listName);
 
             log.info("添加元素到循环列表: listName={}, item={}", listName, item);
 
-            return result != null && result > 0;
+            return added > 0;
         } catch (Exception e) {
             log.error("添加元素失败: listName={}", listName, e);
             return false;
@@ -186,15 +514,22 @@ public class CircularList {
      * 移除指定元素
      */
     public <T> boolean removeItem(String listName, T item) {
-        String key = getListKey(listName);
-
         try {
             String itemJson = mapper.writeValueAsString(item);
-            Long removed = redisTemplate.opsForList().remove(key, 1, itemJson);
+            long removed = mutate(listName, "remove", Collections.singletonList(itemJson));
+
+            if (removed > 0) {
+                listRegistry.release(listName, Collections.singletonList(itemJson));
+            }
+
+            //列表被移空后Redis会删除Key, 同步清空快照避免被回填; 写路径只读主节点, 不使用快照
+            if (removed > 0 && getSizeFromPrimary(listName) == 0) {
+                snapshotStore.save(listName, Collections.emptyList());
+            }
 
             log.info("从循环列表移除元素: listName={}, item={}, removed={}", listName, item, removed);
 
-            return removed != null && removed > 0;
+            return removed > 0;
 
         } catch (Exception e) {
             log.error("移除元素失败: listName={}", listName, e);
@@ -204,45 +539,369 @@ public class CircularList {
 
     /**
      * 获取列表大小
+     * 按自适应超时读取, 可对冲到从节点, 失败或熔断时返回本地快照的大小
      */
     public long getSize(String listName) {
+        return readSize(listName).getValue();
+    }
+
+    /**
+     * 获取列表大小, 结果标明是否为快照
+     * 按自适应超时读取, 可对冲到从节点, 失败或熔断时返回本地快照的大小(stale)
+     */
+    public ReadResult<Long> readSize(String listName) {
         String key = getListKey(listName);
-        Long size = redisTemplate.opsForList().size(key);
+
+        try {
+            Long size = latencyAwareReads.read("getSize", template -> template.opsForList().size(key));
+            return new ReadResult<>(size != null ? size : 0, false);
+
+        } catch (Exception e) {
+            log.warn("获取列表大小失败, 使用快照: listName={}, error={}", listName, e.getMessage());
+            return new ReadResult<>((long) snapshotStore.size(listName), true);
+        }
+    }
+
+    /**
+     * 从主节点读取列表大小, 用于写路径上的判断, 不对冲到从节点(可能落后)也不退回快照
+     */
+    private long getSizeFromPrimary(String listName) {
+        Long size = redisTemplate.opsForList().size(getListKey(listName));
         return size != null ? size : 0;
     }
 
     /**
      * 查看列表所有元素(不改变列表)
+     * 按自适应超时读取, 可对冲到从节点, 失败或熔断时返回本地快照
      */
     public <T> List<T> viewAll(String listName, Class<T> clazz) {
+        return readAll(listName, clazz).getValue();
+    }
+
+    /**
+     * 查看列表所有元素(不改变列表), 结果标明是否为快照
+     * 按自适应超时读取, 可对冲到从节点, 失败或熔断时返回本地快照(stale)
+     */
+    public <T> ReadResult<List<T>> readAll(String listName, Class<T> clazz) {
         String key = getListKey(listName);
         List<T> items = new ArrayList<>();
 
+        List<String> itemJsons = new ArrayList<>();
+        boolean stale = false;
+
         try {
-            List<Object> rawItems = redisTemplate.opsForList().range(key, 0, -1);
+            List<Object> rawItems = latencyAwareReads.read("viewAll", template -> template.opsForList().range(key, 0, -1));
 
             if (rawItems != null) {
                 for (Object rawItem : rawItems) {
-                    T item = mapper.readValue(rawItem.toString(), clazz);
-                    items.add(item);
+                    itemJsons.add(rawItem.toString());
                 }
             }
 
         } catch (Exception e) {
-            log.error("查看列表失败: listName={}", listName, e);
+            //Redis慢或不可用时返回本地快照, 不让请求挂起
+            log.warn("查看列表失败, 使用快照: listName={}, error={}", listName, e.getMessage());
+            itemJsons = snapshotStore.load(listName);
+            stale = true;
+        }
+
+        try {
+            for (String itemJson : itemJsons) {
+                items.add(mapper.readValue(itemJson, clazz));
+            }
+        } catch (Exception e) {
+            log.error("解析列表元素失败: listName={}", listName, e);
+        }
+        return new ReadResult<>(items, stale);
+    }
+
+    /**
+     * 获取列表自某个版本以来的成员变更
+     * 变更日志中仍保留since之后的全部记录时返回增量, 否则(已被裁剪、期间列表被重新初始化)返回当前全部元素;
+     * 增量只描述成员的增减, 不包含轮转位置
+     * @param listName 列表名称
+     * @param since 客户端已同步到的版本号, 首次同步传0
+     * @param clazz 元素类型
+     * @return version: 当前版本号 mode: delta/snapshot changes: 按版本顺序的变更(delta) items: 全部元素(snapshot), 失败时返回null
+     * @param <T> 类型
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Map<String, Object> getChanges(String listName, long since, Class<T> clazz) {
+        listRegistry.touch(listName);
+
+        try {
+            List<Object> reply = redisTemplate.execute(listChangesScript, RedisSerializer.string(),
+                    (RedisSerializer<List<Object>>) (RedisSerializer<?>) RedisSerializer.string(),
+                    Arrays.asList(getListKey(listName), getVersionKey(listName), getChangesKey(listName)),
+                    String.valueOf(since), String.valueOf(changelogMaxLength));
+            List<String> result = reply.stream().map(String::valueOf).collect(Collectors.toList());
+
+            Map<String, Object> changes = new LinkedHashMap<>();
+            changes.put("version", Long.parseLong(result.get(0)));
+            changes.put("mode", result.get(1));
+
+            if ("delta".equals(result.get(1))) {
+                List<Map<String, Object>> records = new ArrayList<>();
+                for (int i = 2; i + 2 < result.size(); i += 3) {
+                    Map<String, Object> record = new LinkedHashMap<>();
+                    record.put("version", Long.parseLong(result.get(i)));
+                    record.put("op", result.get(i + 1));
+                    if (!result.get(i + 2).isEmpty()) {
+                        record.put("item", mapper.readValue(decode(result.get(i + 2)), clazz));
+                    }
+                    records.add(record);
+                }
+                changes.put("changes", records);
+            } else {
+                List<T> items = new ArrayList<>();
+                for (String rawItem : result.subList(2, result.size())) {
+                    items.add(mapper.readValue(decode(rawItem), clazz));
+                }
+                changes.put("items", items);
+            }
+
+            return changes;
+
+        } catch (Exception e) {
+            log.error("获取列表变更失败: listName={}, since={}", listName, since, e);
+            return null;
         }
-        return items;
     }
 
     /**
      * 清空列表
      */
     public boolean clear(String listName) {
-        String key = getListKey(listName);
-        Boolean result = redisTemplate.delete(key);
+        long cleared = mutate(listName, "clear", Collections.emptyList());
+        snapshotStore.save(listName, Collections.emptyList());
+        listRegistry.unregister(listName);
 
         log.info("清空循环列表: listName={}", listName);
 
-        return result != null && result;
+        return cleared > 0;
+    }
+
+    /**
+     * 定期保存列表快照
+     * 列表为空时只有版本号存在(确实被清空、移空或淘汰)才覆盖快照, 避免Redis数据丢失后把快照清空
+     */
+    @Scheduled(fixedDelayString = "${circular-list.snapshot.refresh-millis:30000}")
+    public void refreshSnapshots() {
+        if (!snapshotStore.isEnabled()) {
+            return;
+        }
+
+        for (String listName : knownLists) {
+            try {
+                List<Object> rawItems = redisTemplate.opsForList().range(getListKey(listName), 0, -1);
+
+                if (rawItems != null && !rawItems.isEmpty()) {
+                    List<String> itemJsons = new ArrayList<>(rawItems.size());
+                    for (Object rawItem : rawItems) {
+                        itemJsons.add(rawItem.toString());
+                    }
+                    snapshotStore.save(listName, itemJsons);
+                } else if (snapshotStore.contains(listName) && Boolean.TRUE.equals(redisTemplate.hasKey(getVersionKey(listName)))) {
+                    snapshotStore.save(listName, Collections.emptyList());
+                }
+
+            } catch (Exception e) {
+                log.warn("保存列表快照失败: listName={}, error={}", listName, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 分批淘汰空闲列表
+     * 先按空闲条件注销, 注销成功才删除列表、附属Key和快照, 淘汰期间被访问过的列表保留;
+     * 版本号保留到idle-ttl后过期, 期间其他实例刷新快照时会清空各自的快照
+     */
+    @Scheduled(fixedDelayString = "${circular-list.registry.evict-interval-millis:60000}")
+    public void evictIdleLists() {
+        for (String listName : listRegistry.pollIdle()) {
+            try {
+                if (!listRegistry.unregisterIfIdle(listName)) {
+                    continue;
+                }
+
+                //版本号保留为墓碑, 其他实例的快照不会把淘汰的列表复活
+                List<String> keys = new ArrayList<>();
+                keys.add(getListKey(listName));
+                for (String suffix : SUB_KEY_SUFFIXES) {
+                    keys.add(getSubKey(listName, suffix));
+                }
+                redisTemplate.delete(keys);
+                redisTemplate.expire(getVersionKey(listName), listRegistry.getIdleTtl());
+                snapshotStore.delete(listName);
+                knownLists.remove(listName);
+                rotationBreakers.remove(listName);
+
+                log.info("空闲列表已淘汰: listName={}", listName);
+
+            } catch (Exception e) {
+                log.error("淘汰空闲列表失败: listName={}", listName, e);
+            }
+        }
+    }
+
+    /**
+     * 启动时用快照回填Redis中不存在的列表
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void restoreSnapshots() {
+        for (String listName : snapshotStore.listNames()) {
+            knownLists.add(listName);
+            restoreFromSnapshot(listName);
+        }
+    }
+
+    /**
+     * 数据丢失后用快照回填
+     * 只有列表和版本号都不存在时才回填(在脚本中原子判断), 被其他实例清空、移空或淘汰的列表不会被快照复活;
+     * 回填的列表重新登记, 参与配额统计和空闲淘汰
+     * @return 是否执行了回填
+     */
+    public boolean restoreFromSnapshot(String listName) {
+        try {
+            List<String> itemJsons = snapshotStore.load(listName);
+            if (itemJsons.isEmpty() || mutate(listName, "restore", itemJsons) == 0) {
+                return false;
+            }
+
+            listRegistry.restore(listName, itemJsons);
+
+            log.info("已从快照回填循环列表: listName={}, size={}", listName, itemJsons.size());
+
+            return true;
+
+        } catch (Exception e) {
+            log.warn("从快照回填循环列表失败: listName={}, error={}", listName, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 执行成员变更, 同时递增版本号并追加变更记录
+     * @param op init / restore / add / remove / clear
+     * @param itemJsons 元素(JSON)
+     * @return 影响的元素数量
+     */
+    @SuppressWarnings("unchecked")
+    private long mutate(String listName, String op, List<String> itemJsons) {
+        String[] args = new String[2 + itemJsons.size()];
+        args[0] = op;
+        args[1] = String.valueOf(changelogMaxLength);
+        for (int i = 0; i < itemJsons.size(); i++) {
+            args[2 + i] = encode(itemJsons.get(i));
+        }
+
+        List<?> result = redisTemplate.execute(listMutateScript, RedisSerializer.string(),
+                (RedisSerializer<List<Object>>) (RedisSerializer<?>) RedisSerializer.string(),
+                Arrays.asList(getListKey(listName), getVersionKey(listName), getChangesKey(listName)), (Object[]) args);
+
+        return ((Number) result.get(1)).longValue();
+    }
+
+    /**
+     * 元素在Redis中的存储形式(与RedisTemplate写入的编码一致, 保证LREM能匹配)
+     */
+    @SuppressWarnings("unchecked")
+    private String encode(String itemJson) {
+        byte[] bytes = ((RedisSerializer<Object>) redisTemplate.getValueSerializer()).serialize(itemJson);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private String decode(String rawItem) {
+        Object value = redisTemplate.getValueSerializer().deserialize(rawItem.getBytes(StandardCharsets.UTF_8));
+        return String.valueOf(value);
+    }
+
+    private String getVersionKey(String listName) {
+        return getSubKey(listName, "version");
+    }
+
+    private String getChangesKey(String listName) {
+        return getSubKey(listName, "changes");
+    }
+
+    /**
+     * 列表数据丢失时回填后重新获取, 列表本来就为空时返回null
+     */
+    private <T> T restoreAndPick(String listName, Class<T> clazz) {
+        return restoreFromSnapshot(listName) ? getNextNonBlocking(listName, clazz) : null;
+    }
+
+    /**
+     * 推进列表count次, Redis错误时抛出异常
+     */
+    private <T> List<T> rotate(String listName, int count, Class<T> clazz) throws Exception {
+        if (isShuffled(listName)) {
+            return executeScript(listName, shuffleNextScript, getShuffleKeys(listName), clazz, getShuffleSeed(listName), count);
+        }
+        return executeScript(listName, rotateBatchScript, Collections.emptyList(), clazz, count);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> List<T> executeScript(String listName, RedisScript<List<Object>> script, List<String> extraKeys, Class<T> clazz, Object... args) throws Exception {
+        knownLists.add(listName);
+        listRegistry.touch(listName);
+
+        List<String> keys = new ArrayList<>();
+        keys.add(getListKey(listName));
+        keys.addAll(extraKeys);
+
+        String[] scriptArgs = new String[args.length];
+        for (int i = 0; i < args.length; i++) {
+            scriptArgs[i] = String.valueOf(args[i]);
+        }
+
+        List<T> items = new ArrayList<>();
+
+        List<Object> rawItems = redisTemplate.execute(script, RedisSerializer.string(),
+                (RedisSerializer<List<Object>>) redisTemplate.getValueSerializer(), keys, (Object[]) scriptArgs);
+
+        if (rawItems != null) {
+            for (Object rawItem : rawItems) {
+                items.add(mapper.readValue(rawItem.toString(), clazz));
+            }
+        }
+
+        return items;
+    }
+
+    /**
+     * 洗牌脚本的附属Key: 游标、版本号、下标索引
+     */
+    private List<String> getShuffleKeys(String listName) {
+        return Arrays.asList(getSubKey(listName, "shuffle:cursor"), getVersionKey(listName), getSubKey(listName, "shuffle:index"));
+    }
+
+    private CircuitBreaker getRotationBreaker(String listName) {
+        return rotationBreakers.computeIfAbsent(listName,
+                name -> new CircuitBreaker("rotation:" + name, rotationFailureThreshold, rotationOpenDuration));
+    }
+
+    private String getShuffleSeed(String listName) {
+        return shuffleSeed.isEmpty() ? getListKey(listName) : shuffleSeed + ":" + listName;
+    }
+
+    /**
+     * 降级模式: 从本地快照轮询获取
+     */
+    private <T> T pickFromSnapshot(String listName, Class<T> clazz) {
+        String itemJson = snapshotStore.next(listName);
+
+        if (itemJson == null) {
+            return null;
+        }
+
+        try {
+            T item = mapper.readValue(itemJson, clazz);
+            log.debug("降级模式从快照获取元素: listName={}, item={}", listName, item);
+            return item;
+        } catch (Exception e) {
+            log.error("解析快照元素失败: listName={}", listName, e);
+            return null;
+        }
     }
 }
@@ -0,0 +1,380 @@
+package com.example.circularlist.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 循环列表登记表
+ * 按命名空间(列表名中第一个':'之前的部分, 没有时为默认命名空间)记录每个列表的元素数量、近似内存和最后访问时间,
+ * 写入时检查命名空间的列表数、元素数和内存配额; 访问时间按间隔懒更新, 空闲超过idle-ttl的列表由后台分批淘汰
+ * 同一命名空间的登记数据使用同一个hash tag, 配额检查在一个脚本中原子完成
+ @author lk
+ @create 2026/10/19-14:40
+ */
+@Slf4j
+@Component
+public class ListRegistry {
+
+    /**
+     * 每个元素在Redis列表中的近似额外开销(字节)
+     */
+    private static final int ENTRY_OVERHEAD = 16;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisScript<List<Object>> registryReserveScript;
+
+    @Autowired
+    private RedisScript<Long> registryUnregisterScript;
+
+    @Value("${circular-list.registry.enabled:false}")
+    private boolean enabled;
+
+    @Value("${circular-list.registry.prefix:circular:registry:}")
+    private String prefix;
+
+    @Value("${circular-list.registry.default-namespace:default}")
+    private String defaultNamespace;
+
+    @Value("${circular-list.registry.max-lists:1000}")
+    private long maxLists;
+
+    @Value("${circular-list.registry.max-items:100000}")
+    private long maxItems;
+
+    @Value("${circular-list.registry.max-memory:64MB}")
+    private DataSize maxMemory;
+
+    @Value("${circular-list.registry.idle-ttl:7d}")
+    private Duration idleTtl;
+
+    /**
+     * 访问时间的最小更新间隔, 间隔内的访问不写Redis
+     */
+    @Value("${circular-list.registry.touch-interval:60s}")
+    private Duration touchInterval;
+
+    @Value("${circular-list.registry.evict-batch:100}")
+    private int evictBatch;
+
+    /**
+     * 不淘汰的列表, 以*结尾的按前缀匹配(如 {ads}:* 固定全部广告列表)
+     */
+    @Value("${circular-list.registry.pinned:}")
+    private Set<String> pinned;
+
+    /**
+     * 本实例最后一次更新访问时间
+     */
+    private final Map<String, Long> lastTouched = new ConcurrentHashMap<>();
+
+    /**
+     * 本实例已登记过的命名空间
+     */
+    private final Set<String> knownNamespaces = ConcurrentHashMap.newKeySet();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 列表空闲多久后被淘汰
+     */
+    public Duration getIdleTtl() {
+        return idleTtl;
+    }
+
+    /**
+     * 登记列表写入, 超出命名空间配额时拒绝
+     * @param listName 列表名称
+     * @param itemJsons 写入的元素(JSON)
+     * @param replace true: 替换列表全部元素 false: 追加元素
+     * @return 是否允许写入
+     */
+    public boolean reserve(String listName, List<String> itemJsons, boolean replace) {
+        return update(listName, itemJsons.size(), estimateBytes(itemJsons), replace, true);
+    }
+
+    /**
+     * 登记从快照回填的列表
+     * 回填的是数据丢失前已经写入的数据, 不做配额检查
+     */
+    public void restore(String listName, List<String> itemJsons) {
+        update(listName, itemJsons.size(), estimateBytes(itemJsons), true, false);
+    }
+
+    /**
+     * 登记列表元素移除(removeItem、广告预算用完被移出轮播等所有移除路径)
+     */
+    public void release(String listName, List<String> itemJsons) {
+        update(listName, -itemJsons.size(), -estimateBytes(itemJsons), false, true);
+    }
+
+    /**
+     * 注销列表
+     */
+    public void unregister(String listName) {
+        unregister(listName, "");
+    }
+
+    /**
+     * 列表仍然空闲时注销, 淘汰期间被访问过的列表保留
+     * @return 是否已注销
+     */
+    public boolean unregisterIfIdle(String listName) {
+        return unregister(listName, String.valueOf(System.currentTimeMillis() - idleTtl.toMillis()));
+    }
+
+    /**
+     * 记录列表访问(懒更新)
+     * 只更新已登记的列表, 读取不存在的列表不会产生登记数据
+     */
+    public void touch(String listName) {
+        if (!enabled) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Long last = lastTouched.get(listName);
+        if (last != null && now - last < touchInterval.toMillis()) {
+            return;
+        }
+        lastTouched.put(listName, now);
+
+        try {
+            byte[] accessKey = getAccessKey(namespaceOf(listName)).getBytes(StandardCharsets.UTF_8);
+            byte[] member = listName.getBytes(StandardCharsets.UTF_8);
+            stringRedisTemplate.execute((RedisCallback<Boolean>) connection ->
+                    connection.zSetCommands().zAdd(accessKey, now, member, RedisZSetCommands.ZAddArgs.ifExists()));
+        } catch (Exception e) {
+            log.debug("更新列表访问时间失败: listName={}, error={}", listName, e.getMessage());
+        }
+    }
+
+    /**
+     * 获取一批空闲超过idle-ttl的列表
+     * 固定列表不淘汰, 顺便刷新其访问时间, 避免反复出现在候选中
+     */
+    public List<String> pollIdle() {
+        List<String> idle = new ArrayList<>();
+        if (!enabled) {
+            return idle;
+        }
+
+        long now = System.currentTimeMillis();
+        long cutoff = now - idleTtl.toMillis();
+
+        try {
+            Set<String> namespaces = stringRedisTemplate.opsForSet().members(getNamespacesKey());
+            if (namespaces == null) {
+                return idle;
+            }
+
+            for (String namespace : namespaces) {
+                Set<String> candidates = stringRedisTemplate.opsForZSet()
+                        .rangeByScore(getAccessKey(namespace), 0, cutoff, 0, evictBatch - idle.size());
+                if (candidates == null) {
+                    continue;
+                }
+
+                for (String listName : candidates) {
+                    if (isPinned(listName)) {
+                        stringRedisTemplate.opsForZSet().add(getAccessKey(namespace), listName, now);
+                    } else {
+                        idle.add(listName);
+                    }
+                }
+
+                if (idle.size() >= evictBatch) {
+                    break;
+                }
+            }
+
+        } catch (Exception e) {
+            log.error("获取空闲列表失败", e);
+        }
+
+        return idle;
+    }
+
+    /**
+     * 是否为不淘汰的列表
+     */
+    public boolean isPinned(String listName) {
+        for (String pattern : pinned) {
+            boolean matched = pattern.endsWith("*")
+                    ? listName.startsWith(pattern.substring(0, pattern.length() - 1))
+                    : pattern.equals(listName);
+            if (matched) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 列表登记信息
+     */
+    public Map<String, Object> getInfo(String listName) {
+        String namespace = namespaceOf(listName);
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("listName", listName);
+        info.put("namespace", namespace);
+        info.put("pinned", isPinned(listName));
+
+        try {
+            List<Object> values = stringRedisTemplate.opsForHash()
+                    .multiGet(getNamespaceKey(namespace), Arrays.asList(listName + ":items", listName + ":bytes"));
+            Double lastAccess = stringRedisTemplate.opsForZSet().score(getAccessKey(namespace), listName);
+
+            info.put("registered", values.get(0) != null);
+            info.put("items", toLong(values.get(0)));
+            info.put("approxBytes", toLong(values.get(1)));
+            info.put("lastAccess", lastAccess != null ? lastAccess.longValue() : null);
+
+        } catch (Exception e) {
+            log.error("获取列表登记信息失败: listName={}", listName, e);
+        }
+
+        return info;
+    }
+
+    /**
+     * 命名空间用量和配额
+     */
+    public Map<String, Object> getNamespaceStats(String namespace) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("namespace", namespace);
+
+        try {
+            List<Object> values = stringRedisTemplate.opsForHash()
+                    .multiGet(getNamespaceKey(namespace), Arrays.asList("lists", "items", "bytes"));
+            stats.put("lists", toLong(values.get(0)));
+            stats.put("items", toLong(values.get(1)));
+            stats.put("approxBytes", toLong(values.get(2)));
+
+        } catch (Exception e) {
+            log.error("获取命名空间用量失败: namespace={}", namespace, e);
+        }
+
+        stats.put("maxLists", maxLists);
+        stats.put("maxItems", maxItems);
+        stats.put("maxBytes", maxMemory.toBytes());
+        return stats;
+    }
+
+    /**
+     * 列表所属命名空间
+     */
+    public String namespaceOf(String listName) {
+        int separator = listName.indexOf(':');
+        if (separator <= 0) {
+            return defaultNamespace;
+        }
+
+        String namespace = listName.substring(0, separator).replace("{", "").replace("}", "");
+        return namespace.isEmpty() ? defaultNamespace : namespace;
+    }
+
+    /**
+     * 执行登记脚本
+     * Redis不可用时不限制, 由后续的写入操作报错
+     * @param enforce 是否检查配额
+     */
+    private boolean update(String listName, long items, long bytes, boolean replace, boolean enforce) {
+        if (!enabled) {
+            return true;
+        }
+
+        String namespace = namespaceOf(listName);
+
+        try {
+            List<?> result = stringRedisTemplate.execute(registryReserveScript,
+                    Arrays.asList(getNamespaceKey(namespace), getAccessKey(namespace)),
+                    listName, String.valueOf(items), String.valueOf(bytes), replace ? "1" : "0",
+                    String.valueOf(enforce ? maxLists : Long.MAX_VALUE), String.valueOf(enforce ? maxItems : Long.MAX_VALUE),
+                    String.valueOf(enforce ? maxMemory.toBytes() : Long.MAX_VALUE),
+                    String.valueOf(System.currentTimeMillis()));
+
+            if (((Number) result.get(0)).longValue() == 0) {
+                log.warn("超出命名空间配额, 拒绝写入: listName={}, namespace={}, quota={}", listName, namespace, result.get(1));
+                return false;
+            }
+
+            if (knownNamespaces.add(namespace)) {
+                stringRedisTemplate.opsForSet().add(getNamespacesKey(), namespace);
+            }
+            lastTouched.put(listName, System.currentTimeMillis());
+            return true;
+
+        } catch (Exception e) {
+            log.error("列表登记失败, 本次不做配额检查: listName={}", listName, e);
+            return true;
+        }
+    }
+
+    private boolean unregister(String listName, String cutoff) {
+        if (!enabled) {
+            return false;
+        }
+
+        String namespace = namespaceOf(listName);
+
+        try {
+            Long result = stringRedisTemplate.execute(registryUnregisterScript,
+                    Arrays.asList(getNamespaceKey(namespace), getAccessKey(namespace)), listName, cutoff);
+            lastTouched.remove(listName);
+            return result != null && result > 0;
+
+        } catch (Exception e) {
+            log.error("列表注销失败: listName={}", listName, e);
+            return false;
+        }
+    }
+
+    private static long estimateBytes(List<String> itemJsons) {
+        long bytes = 0;
+        for (String itemJson : itemJsons) {
+            bytes += itemJson.getBytes(StandardCharsets.UTF_8).length + ENTRY_OVERHEAD;
+        }
+        return bytes;
+    }
+
+    private static long toLong(Object value) {
+        return value != null ? Long.parseLong(value.toString()) : 0;
+    }
+
+    private String getNamespaceKey(String namespace) {
+        return prefix + CircularList.hashTag(namespace);
+    }
+
+    private String getAccessKey(String namespace) {
+        return getNamespaceKey(namespace) + ":access";
+    }
+
+    /**
+     * 全部命名空间的集合, 只单独访问; 同样带hash tag, 集群模式下与其他Key的约定一致
+     */
+    private String getNamespacesKey() {
+        return prefix + "{registry}:namespaces";
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.circularlist.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 循环列表本地快照
+ * 每个列表一个内存映射文件, 用于Redis重启后回填数据, 以及Redis不可用时降级本地轮询
+ * 文件格式: 魔数(int) + 元素数量(int) + [元素长度(int) + UTF-8字节]...
+ @author lk
+ @create 2026/10/19-11:20
+ */
+@Slf4j
+@Component
+public class ListSnapshotStore {
+
+    private static final int MAGIC = 0x434C5331;
+
+    private static final String SUFFIX = ".snap";
+
+    @Value("${circular-list.snapshot.enabled:false}")
+    private boolean enabled;
+
+    @Value("${circular-list.snapshot.dir:snapshot}")
+    private String dir;
+
+    /**
+     * 已加载的快照
+     */
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    /**
+     * 映射后的快照文件, 元素在读取时才解码
+     */
+    private static class Snapshot {
+        private final ByteBuffer buffer;
+        private final int[] offsets;
+        private final AtomicLong cursor = new AtomicLong();
+
+        private Snapshot(ByteBuffer buffer, int[] offsets) {
+            this.buffer = buffer;
+            this.offsets = offsets;
+        }
+
+        private String get(int index) {
+            ByteBuffer view = buffer.duplicate();
+            view.position(offsets[index]);
+            byte[] bytes = new byte[view.getInt()];
+            view.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 保存列表快照
+     * 先写临时文件再原子替换, 读取方不会看到写了一半的文件
+     * @param listName 列表名称
+     * @param rawItems 列表元素(JSON)
+     */
+    public void save(String listName, List<String> rawItems) {
+        if (!enabled) {
+            return;
+        }
+
+        List<byte[]> encoded = new ArrayList<>(rawItems.size());
+        long size = 8;
+        for (String rawItem : rawItems) {
+            byte[] bytes = rawItem.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            size += 4 + bytes.length;
+        }
+
+        try {
+            Path directory = Files.createDirectories(Paths.get(dir));
+            Path target = directory.resolve(fileName(listName));
+            Path temp = directory.resolve(fileName(listName) + ".tmp");
+
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.putInt(MAGIC);
+                buffer.putInt(encoded.size());
+                for (byte[] bytes : encoded) {
+                    buffer.putInt(bytes.length);
+                    buffer.put(bytes);
+                }
+                buffer.force();
+            }
+
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            snapshots.remove(listName);
+
+            log.debug("列表快照已保存: listName={}, size={}, bytes={}", listName, encoded.size(), size);
+
+        } catch (IOException e) {
+            log.error("保存列表快照失败: listName={}", listName, e);
+        }
+    }
+
+    /**
+     * 读取列表快照的全部元素
+     * @return 元素列表(JSON), 没有快照时返回空列表
+     */
+    public List<String> load(String listName) {
+        Snapshot snapshot = getSnapshot(listName);
+        List<String> rawItems = new ArrayList<>();
+
+        if (snapshot != null) {
+            for (int i = 0; i < snapshot.offsets.length; i++) {
+                rawItems.add(snapshot.get(i));
+            }
+        }
+
+        return rawItems;
+    }
+
+    /**
+     * 快照中的元素数量, 没有快照时返回0
+     */
+    public int size(String listName) {
+        Snapshot snapshot = getSnapshot(listName);
+        return snapshot != null ? snapshot.offsets.length : 0;
+    }
+
+    /**
+     * 降级模式下从快照轮询获取下一个元素
+     * @return 元素(JSON), 没有快照时返回null
+     */
+    public String next(String listName) {
+        Snapshot snapshot = getSnapshot(listName);
+
+        if (snapshot == null || snapshot.offsets.length == 0) {
+            return null;
+        }
+
+        int index = (int) (snapshot.cursor.getAndIncrement() % snapshot.offsets.length);
+        return snapshot.get(index);
+    }
+
+    /**
+     * 删除列表快照(列表被淘汰时)
+     */
+    public void delete(String listName) {
+        snapshots.remove(listName);
+
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            Files.deleteIfExists(Paths.get(dir).resolve(fileName(listName)));
+        } catch (IOException e) {
+            log.error("删除列表快照失败: listName={}", listName, e);
+        }
+    }
+
+    /**
+     * 是否存在该列表的快照
+     */
+    public boolean contains(String listName) {
+        return getSnapshot(listName) != null;
+    }
+
+    /**
+     * 所有有快照的列表名称
+     */
+    public List<String> listNames() {
+        List<String> names = new ArrayList<>();
+
+        Path directory = Paths.get(dir);
+        if (!enabled || !Files.isDirectory(directory)) {
+            return names;
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                names.add(URLDecoder.decode(name.substring(0, name.length() - SUFFIX.length()), StandardCharsets.UTF_8.name()));
+            }
+        } catch (IOException e) {
+            log.error("读取快照目录失败: dir={}", dir, e);
+        }
+
+        return names;
+    }
+
+    /**
+     * 映射快照文件, 只扫描一遍长度字段建立偏移索引
+     */
+    private Snapshot getSnapshot(String listName) {
+        if (!enabled) {
+            return null;
+        }
+
+        Snapshot cached = snapshots.get(listName);
+        if (cached != null) {
+            return cached;
+        }
+
+        Path file = Paths.get(dir).resolve(fileName(listName));
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC) {
+                log.warn("快照文件格式错误: file={}", file);
+                return null;
+            }
+
+            int[] offsets = new int[buffer.getInt()];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = buffer.position();
+                buffer.position(buffer.position() + 4 + buffer.getInt(buffer.position()));
+            }
+
+            Snapshot snapshot = new Snapshot(buffer, offsets);
+            snapshots.put(listName, snapshot);
+
+            log.info("列表快照已加载: listName={}, size={}", listName, offsets.length);
+
+            return snapshot;
+
+        } catch (IOException e) {
+            log.error("加载列表快照失败: listName={}", listName, e);
+            return null;
+        }
+    }
+
+    private static String fileName(String listName) {
+        try {
+            return URLEncoder.encode(listName, StandardCharsets.UTF_8.name()) + SUFFIX;
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
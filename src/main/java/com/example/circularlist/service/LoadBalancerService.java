@@ -1,14 +1,28 @@
 package com.example.circularlist.service;
 
+import com.example.circularlist.model.ReadResult;
 import com.example.circularlist.model.Task;
 import com.example.circularlist.model.WorkerNode;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -25,21 +39,61 @@ public class LoadBalancerService {
     @Autowired
     private CircularList circularList;
 
+    @Autowired
+    private PrefetchBufferFactory prefetchBufferFactory;
+
+    @Autowired
+    private StructuredFanOut structuredFanOut;
+
+    @Autowired
+    private AdmissionControl admissionControl;
+
+    @Autowired
+    private ObjectMapper mapper;
+
+    /**
+     * 流式分配时每批的任务数量
+     */
+    @Value("${circular-list.ingest.batch-size:100}")
+    private int ingestBatchSize;
+
     private static final String WORKER_LIST = "workers";
 
+    /**
+     * 工作节点预取缓冲, 未开启预取时为null
+     */
+    private PrefetchBuffer<WorkerNode> workerBuffer;
+
+    @PostConstruct
+    public void initPrefetch() {
+        workerBuffer = prefetchBufferFactory.create(WORKER_LIST, count -> circularList.getNextBatch(WORKER_LIST, count, WorkerNode.class));
+    }
+
     /**
      * 初始化工作节点池
      */
     public void initWorkers(List<WorkerNode> workers) {
         circularList.initList(WORKER_LIST, workers);
+        invalidatePrefetch();
+
+        long capacity = 0;
+        for (WorkerNode worker : workers) {
+            capacity += freeCapacity(worker);
+        }
+        admissionControl.resetCapacity(WORKER_LIST, capacity);
+
         log.info("工作节点池已初始化: count={}", workers.size());
     }
 
     /**
      * 获取下一个工作节点
+     * 开启预取时优先从本地缓冲获取, 缓冲和列表都为空时阻塞等待
      */
     public WorkerNode getNextWorker() {
-        WorkerNode worker = circularList.getNext(WORKER_LIST, WorkerNode.class);
+        WorkerNode worker = workerBuffer != null ? workerBuffer.poll() : null;
+        if (worker == null) {
+            worker = circularList.getNext(WORKER_LIST, WorkerNode.class);
+        }
 
         if (worker != null) {
             //更新最后使用时间
@@ -70,41 +124,220 @@ public class LoadBalancerService {
 
     /**
      * 批量分配任务
+     * 先按批预留集群容量, 只分配预留到的部分, 未用完的容量立即归还
+     * @return 已分配的任务, 集群容量已满被拒绝时返回null
      */
     public List<Task> assignTasks(List<Task> tasks) {
+        if (tasks.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        int granted = admissionControl.acquire(WORKER_LIST, tasks.size());
+        if (granted == 0) {
+            log.debug("集群容量已满, 拒绝分配: total={}", tasks.size());
+            return null;
+        }
+
+        List<Task> admitted = tasks.subList(0, granted);
         List<Task> assignedTasks = new ArrayList<>();
 
-        for (Task task : tasks) {
-            Task assigned = assignTask(task);
-            if (assigned != null) {
-                assignedTasks.add(assigned);
+        try {
+            //开启虚拟线程时每个任务并发分配, 否则顺序分配
+            List<Task> results = structuredFanOut.isEnabled()
+                    ? structuredFanOut.invokeAll(admitted, this::assignTask)
+                    : null;
+
+            for (int i = 0; i < admitted.size(); i++) {
+                Task assigned = results != null ? results.get(i) : assignTask(admitted.get(i));
+                if (assigned != null) {
+                    assignedTasks.add(assigned);
+                }
             }
+        } finally {
+            //分配中途抛出异常时, 没有返回给调用方的任务同样归还容量
+            admissionControl.release(WORKER_LIST, granted - assignedTasks.size());
         }
 
-        log.info("批量任务分配完成: total={}, assigned={}", tasks.size(), assignedTasks.size());
+        log.info("批量任务分配完成: total={}, admitted={}, assigned={}", tasks.size(), granted, assignedTasks.size());
 
         return assignedTasks;
     }
 
+    /**
+     * 流式分配任务(NDJSON)
+     * 边解析边按批分配, 每批的结果立即写出, 内存中最多保留一批任务;
+     * 每批预留的集群容量在结果写出后归还: 流式提交没有完成回报, 容量只限制同时在分配中的批次, 流的长度不受容量限制;
+     * 集群容量不足或没有可用节点时, 该批未分配的任务标记为rejected, 由提交方重试;
+     * 任务中的未知字段被忽略, 不会中断整个流
+     * @param in 请求体, 每行一个任务
+     * @param out 响应体, 每行一个任务的分配结果, 最后一行为汇总
+     * @return 汇总
+     */
+    public Map<String, Object> ingestTasks(InputStream in, OutputStream out) throws IOException {
+        long received = 0;
+        long assigned = 0;
+        long invalid = 0;
+        String error = null;
+        List<Task> batch = new ArrayList<>(ingestBatchSize);
+        Map<String, Object> summary = new LinkedHashMap<>();
+
+        try (MappingIterator<Task> tasks = mapper.readerFor(Task.class)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .readValues(in);
+             JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(new SerializedString("\n"));
+
+            while (true) {
+                Task task;
+                try {
+                    if (!tasks.hasNextValue()) {
+                        break;
+                    }
+                    task = tasks.nextValue();
+                } catch (JsonProcessingException e) {
+                    //NDJSON无法可靠地跳过格式错误的行, 停止解析, 已分配的结果仍然有效
+                    error = "第" + (received + 1) + "个任务解析失败: " + e.getOriginalMessage();
+                    break;
+                }
+                received++;
+
+                if (task.getTaskId() == null || task.getTaskId().isEmpty()) {
+                    invalid++;
+                    writeResult(generator, task, "invalid");
+                    continue;
+                }
+
+                task.setAssignedNode(null);
+                batch.add(task);
+                if (batch.size() >= ingestBatchSize) {
+                    assigned += assignBatch(batch, generator);
+                    batch.clear();
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                assigned += assignBatch(batch, generator);
+            }
+
+            summary.put("status", error == null ? "done" : "error");
+            summary.put("received", received);
+            summary.put("assigned", assigned);
+            summary.put("rejected", received - invalid - assigned);
+            summary.put("invalid", invalid);
+            if (error != null) {
+                summary.put("error", error);
+            }
+            generator.writeObject(summary);
+            generator.writeRaw('\n');
+        }
+
+        log.info("流式任务分配完成: {}", summary);
+        return summary;
+    }
+
+    /**
+     * 分配一批任务并写出每个任务的结果, 写出后归还该批占用的集群容量
+     * @return 已分配的数量
+     */
+    private int assignBatch(List<Task> batch, JsonGenerator generator) throws IOException {
+        List<Task> assignedTasks = assignTasks(batch);
+        int assigned = assignedTasks != null ? assignedTasks.size() : 0;
+
+        try {
+            for (Task task : batch) {
+                writeResult(generator, task, task.getAssignedNode() != null ? "assigned" : "rejected");
+            }
+            generator.flush();
+        } finally {
+            if (assigned > 0) {
+                admissionControl.release(WORKER_LIST, assigned);
+            }
+        }
+
+        return assigned;
+    }
+
+    private static void writeResult(JsonGenerator generator, Task task, String status) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("taskId", task.getTaskId());
+        generator.writeStringField("status", status);
+        if (task.getAssignedNode() != null) {
+            generator.writeStringField("assignedNode", task.getAssignedNode());
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * 任务完成, 归还占用的集群容量
+     * @return 归还后的剩余容量, 没有容量记录时返回-1
+     */
+    public long completeTasks(int count) {
+        long available = admissionControl.release(WORKER_LIST, count);
+        log.info("任务已完成: count={}, available={}", count, available);
+        return available;
+    }
+
+    /**
+     * 集群容量监控指标
+     */
+    public Map<String, Object> getCapacityStats() {
+        return admissionControl.getStats(WORKER_LIST);
+    }
+
     /**
      * 添加工作节点
      */
     public boolean addWorker(WorkerNode worker) {
-        return circularList.addItem(WORKER_LIST, worker);
+        boolean added = circularList.addItem(WORKER_LIST, worker);
+        invalidatePrefetch();
+        if (added) {
+            admissionControl.adjustCapacity(WORKER_LIST, freeCapacity(worker));
+        }
+        return added;
     }
 
     /**
      * 移除工作节点
      */
     public boolean removeWorker(WorkerNode worker) {
-        return circularList.removeItem(WORKER_LIST, worker);
+        boolean removed = circularList.removeItem(WORKER_LIST, worker);
+        invalidatePrefetch();
+        if (removed) {
+            admissionControl.adjustCapacity(WORKER_LIST, -freeCapacity(worker));
+        }
+        return removed;
+    }
+
+    /**
+     * 节点剩余容量(maxLoad - currentLoad)
+     */
+    private static long freeCapacity(WorkerNode worker) {
+        int maxLoad = worker.getMaxLoad() != null ? worker.getMaxLoad() : 0;
+        int currentLoad = worker.getCurrentLoad() != null ? worker.getCurrentLoad() : 0;
+        return Math.max(maxLoad - currentLoad, 0);
+    }
+
+    /**
+     * 预先补满工作节点预取缓冲
+     * @return 缓冲的节点数量, 未开启预取时为0
+     */
+    public int prefetchWorkers() {
+        return workerBuffer != null ? workerBuffer.prefill() : 0;
+    }
+
+    private void invalidatePrefetch() {
+        if (workerBuffer != null) {
+            workerBuffer.invalidate();
+        }
     }
 
     /**
      * 查看所有工作节点
+     * Redis不可用时返回本地快照(stale)
      */
-    public List<WorkerNode> getAllWorkers() {
-        return circularList.viewAll(WORKER_LIST, WorkerNode.class);
+    public ReadResult<List<WorkerNode>> getAllWorkers() {
+        return circularList.readAll(WORKER_LIST, WorkerNode.class);
     }
 
     /**
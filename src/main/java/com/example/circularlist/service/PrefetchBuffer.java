@@ -0,0 +1,254 @@
+package com.example.circularlist.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+
+/**
+ * 本地预取缓冲
+ * 从循环列表批量取出元素放在JVM内存中, 低于低水位时异步补充
+ * 元素超过最大缓存时间后丢弃, 已移除的元素最多在该时间内被继续分配
+ * 每批加载的数量随需求调整: 缓冲被取空时翻倍(不超过容量), 有元素过期丢弃时减半, 避免为用不完的元素提前推进列表;
+ * 缓冲为空时的同步加载同一时间只有一个线程执行, 其他线程等待后直接使用加载结果(ReentrantLock, 虚拟线程等待时不占用载体线程);
+ * 清空缓冲时递增代数, 清空前发出的加载(同步或异步补充)返回后发现代数已变化则丢弃结果, 不会把变更前的元素放回缓冲
+ * 取出即产生副作用(扣减令牌、预算)的列表不能使用预取, 过期丢弃的元素也已经付过费
+ @author lk
+ @create 2026/10/19-10:05
+ */
+@Slf4j
+public class PrefetchBuffer<T> {
+
+    private final String name;
+
+    private final IntFunction<List<T>> loader;
+
+    private final Executor executor;
+
+    private final int capacity;
+
+    private final int lowWater;
+
+    private final long maxStaleMillis;
+
+    private final Queue<Entry<T>> queue = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicBoolean refilling = new AtomicBoolean();
+
+    /**
+     * 当前每批加载的数量, 在[1, capacity]之间按需求调整
+     */
+    private final AtomicInteger batchSize = new AtomicInteger();
+
+    /**
+     * 同步加载锁, 缓冲为空时只有一个线程访问Redis
+     */
+    private final ReentrantLock loadLock = new ReentrantLock();
+
+    /**
+     * 缓冲代数, 每次清空时递增
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * 放入缓冲和清空缓冲互斥, 检查代数后放入的过程中不会被清空穿插(持有期间不访问Redis)
+     */
+    private final ReentrantLock publishLock = new ReentrantLock();
+
+    /**
+     * 缓冲元素及取回时间
+     */
+    private static class Entry<T> {
+        private final T item;
+        private final long fetchedAt;
+
+        private Entry(T item, long fetchedAt) {
+            this.item = item;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    /**
+     * @param name 缓冲名称(用于日志)
+     * @param loader 批量加载函数, 参数为需要的数量
+     * @param executor 异步补充使用的线程池
+     * @param capacity 缓冲容量
+     * @param lowWater 低水位, 剩余数量低于该值时触发补充
+     * @param maxStaleMillis 元素最大缓存时间(毫秒)
+     */
+    public PrefetchBuffer(String name, IntFunction<List<T>> loader, Executor executor, int capacity, int lowWater, long maxStaleMillis) {
+        this.name = name;
+        this.loader = loader;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.lowWater = lowWater;
+        this.maxStaleMillis = maxStaleMillis;
+        this.batchSize.set(Math.max(Math.min(lowWater, capacity), 1));
+    }
+
+    /**
+     * 获取下一个元素
+     * 缓冲为空时同步加载一批, 并发的调用方只有一个执行加载
+     * @return 下一个元素, 列表为空时返回null
+     */
+    public T poll() {
+        T item = pollFresh();
+        if (item != null) {
+            refillIfNeeded();
+            return item;
+        }
+
+        loadLock.lock();
+        try {
+            //等待期间其他线程可能已经加载完成
+            item = pollFresh();
+            if (item != null) {
+                return item;
+            }
+
+            //缓冲被取空, 说明每批数量跟不上需求
+            int count = grow();
+            long loadGeneration = generation.get();
+            List<T> items = loader.apply(count);
+            if (items.isEmpty()) {
+                return null;
+            }
+
+            //加载期间缓冲被清空时, 其余元素不放入缓冲, 只返回第一个(等同于一次未缓冲的读取)
+            offer(items.subList(1, items.size()), System.currentTimeMillis(), loadGeneration);
+
+            return items.get(0);
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    /**
+     * 清空缓冲(列表成员变化时调用)
+     */
+    public void invalidate() {
+        publishLock.lock();
+        try {
+            generation.incrementAndGet();
+            while (queue.poll() != null) {
+                size.decrementAndGet();
+            }
+        } finally {
+            publishLock.unlock();
+        }
+        log.debug("预取缓冲已清空: name={}", name);
+    }
+
+    /**
+     * 同步补满缓冲(启动预热时调用)
+     * @return 补充后缓冲的元素数量
+     */
+    public int prefill() {
+        int count = capacity - size.get();
+        if (count > 0) {
+            long loadGeneration = generation.get();
+            offer(loader.apply(count), System.currentTimeMillis(), loadGeneration);
+        }
+        return size.get();
+    }
+
+    /**
+     * 当前缓冲的元素数量
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * 取出未过期的元素, 有过期元素被丢弃时减小每批数量
+     */
+    private T pollFresh() {
+        long now = System.currentTimeMillis();
+        boolean dropped = false;
+        Entry<T> entry;
+
+        try {
+            while ((entry = queue.poll()) != null) {
+                size.decrementAndGet();
+                if (now - entry.fetchedAt <= maxStaleMillis) {
+                    return entry.item;
+                }
+                dropped = true;
+            }
+            return null;
+        } finally {
+            if (dropped) {
+                shrink();
+            }
+        }
+    }
+
+    private int grow() {
+        return batchSize.updateAndGet(current -> Math.min(current * 2, capacity));
+    }
+
+    private void shrink() {
+        int current = batchSize.updateAndGet(value -> Math.max(value / 2, 1));
+        log.debug("预取缓冲有元素过期, 减小每批数量: name={}, batchSize={}", name, current);
+    }
+
+    /**
+     * 放入缓冲, 加载开始后缓冲被清空过时丢弃
+     * @return 是否放入
+     */
+    private boolean offer(List<T> items, long fetchedAt, long loadGeneration) {
+        publishLock.lock();
+        try {
+            if (generation.get() != loadGeneration) {
+                log.debug("预取缓冲加载期间已清空, 丢弃加载结果: name={}, loaded={}", name, items.size());
+                return false;
+            }
+            for (T item : items) {
+                queue.offer(new Entry<>(item, fetchedAt));
+                size.incrementAndGet();
+            }
+            return true;
+        } finally {
+            publishLock.unlock();
+        }
+    }
+
+    private void refillIfNeeded() {
+        if (size.get() >= lowWater || !refilling.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    int count = Math.min(capacity - size.get(), batchSize.get());
+                    if (count > 0) {
+                        long loadGeneration = generation.get();
+                        List<T> items = loader.apply(count);
+                        if (!offer(items, System.currentTimeMillis(), loadGeneration)) {
+                            return;
+                        }
+                        log.debug("预取缓冲已补充: name={}, loaded={}, size={}", name, items.size(), size.get());
+                    }
+                } catch (Exception e) {
+                    log.error("预取缓冲补充失败: name={}", name, e);
+                } finally {
+                    refilling.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refilling.set(false);
+            log.warn("预取缓冲补充任务被拒绝: name={}", name);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.circularlist.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
+
+/**
+ * 预取缓冲工厂
+ * 统一读取预取配置, 未开启时返回null, 调用方直接访问Redis
+ @author lk
+ @create 2026/10/19-10:05
+ */
+@Component
+public class PrefetchBufferFactory {
+
+    @Autowired
+    @Qualifier("prefetchExecutor")
+    private Executor prefetchExecutor;
+
+    @Value("${circular-list.prefetch.enabled:false}")
+    private boolean enabled;
+
+    @Value("${circular-list.prefetch.capacity:64}")
+    private int capacity;
+
+    @Value("${circular-list.prefetch.low-water:16}")
+    private int lowWater;
+
+    @Value("${circular-list.prefetch.max-stale-millis:1000}")
+    private long maxStaleMillis;
+
+    /**
+     * 创建预取缓冲
+     * @param name 缓冲名称
+     * @param loader 批量加载函数
+     * @return 预取缓冲, 未开启预取时返回null
+     */
+    public <T> PrefetchBuffer<T> create(String name, IntFunction<List<T>> loader) {
+        if (!enabled) {
+            return null;
+        }
+        return new PrefetchBuffer<>(name, loader, prefetchExecutor, capacity, lowWater, maxStaleMillis);
+    }
+}
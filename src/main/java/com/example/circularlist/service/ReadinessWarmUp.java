@@ -0,0 +1,219 @@
+package com.example.circularlist.service;
+
+import com.example.circularlist.config.BlockingCommandPool;
+import com.example.circularlist.config.LatencyAwareReads;
+import com.example.circularlist.model.AdItem;
+import com.example.circularlist.model.BroadcastMessage;
+import com.example.circularlist.model.Task;
+import com.example.circularlist.model.WorkerNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 启动预热
+ * 在应用进入ACCEPTING_TRAFFIC之前执行(ApplicationRunner先于就绪状态发布): 建立共享连接和阻塞命令连接池的最小连接、
+ * 按SHA预加载全部Lua脚本(首次EVALSHA不再收到NOSCRIPT后重发脚本全文)、按热路径的编解码链解析列表元素类型的序列化器,
+ * 可选地补满预取缓冲; 每一步有单独的短超时, 超时或失败只记录日志, Redis不可用时应用照常启动, 不必等满命令超时
+ @author lk
+ @create 2026/10/19-16:50
+ */
+@Slf4j
+@Component
+public class ReadinessWarmUp implements ApplicationRunner {
+
+    /**
+     * 循环列表中保存的元素类型
+     */
+    private static final List<Class<?>> ELEMENT_TYPES = Arrays.asList(
+            WorkerNode.class, AdItem.class, ResourcePoolService.Resource.class, Task.class, BroadcastMessage.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Autowired
+    private BlockingCommandPool blockingCommandPool;
+
+    @Autowired
+    private LatencyAwareReads latencyAwareReads;
+
+    @Autowired
+    private LoadBalancerService loadBalancerService;
+
+    @Autowired
+    private ObjectMapper mapper;
+
+    @Autowired
+    private List<RedisScript<?>> scripts;
+
+    @Autowired
+    private ApplicationAvailability availability;
+
+    @Value("${circular-list.warm-up.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 是否补满预取缓冲(会提前推进列表)
+     */
+    @Value("${circular-list.warm-up.prefill:false}")
+    private boolean prefill;
+
+    /**
+     * 每一步的超时时间, 超时的步骤被中断并记为失败
+     */
+    @Value("${circular-list.warm-up.step-timeout:2s}")
+    private Duration stepTimeout;
+
+    /**
+     * 执行各步骤的线程, 超时后调用方不再等待
+     */
+    private ExecutorService stepExecutor;
+
+    /**
+     * 各步骤的结果和耗时
+     */
+    private final Map<String, Object> report = new LinkedHashMap<>();
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        stepExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "warm-up");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            runSteps();
+        } finally {
+            stepExecutor.shutdownNow();
+        }
+
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        synchronized (report) {
+            report.put("totalMillis", millis);
+        }
+        log.info("启动预热完成: elapsedMillis={}, report={}", millis, report);
+    }
+
+    private void runSteps() {
+        step("sharedConnection", () -> stringRedisTemplate.execute((RedisCallback<String>) RedisConnection::ping));
+        step("blockingPool", () -> {
+            blockingCommandPool.prepare();
+            return blockingCommandPool.getStats().get("idle");
+        });
+        step("replica", latencyAwareReads::prepare);
+        step("scripts", this::loadScripts);
+        step("codecs", this::resolveCodecs);
+        if (prefill) {
+            step("prefetchWorkers", loadBalancerService::prefetchWorkers);
+        }
+    }
+
+    /**
+     * 预热结果和当前就绪状态
+     */
+    public Map<String, Object> getReport() {
+        Map<String, Object> result;
+        synchronized (report) {
+            result = new LinkedHashMap<>(report);
+        }
+        result.put("readiness", availability.getReadinessState());
+        return result;
+    }
+
+    /**
+     * SCRIPT LOAD全部脚本
+     * Cluster模式下Lettuce会把SCRIPT LOAD广播到所有主节点
+     * @return 加载的脚本数量
+     */
+    private int loadScripts() {
+        for (RedisScript<?> script : scripts) {
+            byte[] body = script.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+            String sha = stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.scriptingCommands().scriptLoad(body));
+            if (!script.getSha1().equals(sha)) {
+                log.warn("脚本SHA不一致: expected={}, actual={}", script.getSha1(), sha);
+            }
+        }
+        return scripts.size();
+    }
+
+    /**
+     * 按热路径的编解码链各执行一次: 元素 -> JSON字符串(ObjectMapper) -> RedisTemplate的值序列化器 -> 反序列化 -> 元素,
+     * 让值序列化器(Jackson2JsonRedisSerializer<Object>)和ObjectMapper缓存对应类型的序列化器
+     * @return 解析的类型数量
+     */
+    @SuppressWarnings("unchecked")
+    private int resolveCodecs() throws Exception {
+        RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        for (Class<?> type : ELEMENT_TYPES) {
+            String itemJson = mapper.writeValueAsString(mapper.readValue("{}", type));
+            Object raw = valueSerializer.deserialize(valueSerializer.serialize(itemJson));
+            mapper.readValue(String.valueOf(raw), type);
+        }
+        return ELEMENT_TYPES.size();
+    }
+
+    private void step(String name, Callable<Object> action) {
+        long start = System.nanoTime();
+        Map<String, Object> result = new LinkedHashMap<>();
+
+        Future<Object> future = stepExecutor.submit(action);
+        try {
+            result.put("result", future.get(stepTimeout.toMillis(), TimeUnit.MILLISECONDS));
+            result.put("success", true);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            fail(name, result, "超时(" + stepTimeout.toMillis() + "ms)");
+        } catch (ExecutionException e) {
+            fail(name, result, e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            fail(name, result, "被中断");
+        }
+
+        result.put("millis", (System.nanoTime() - start) / 1_000_000.0);
+        synchronized (report) {
+            report.put(name, result);
+        }
+    }
+
+    private static void fail(String name, Map<String, Object> result, String error) {
+        result.put("success", false);
+        result.put("error", error);
+        log.warn("启动预热步骤失败: step={}, error={}", name, error);
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.circularlist.service;
 
+import com.example.circularlist.model.ReadResult;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -43,8 +44,9 @@ public class ResourcePoolService {
 
     /**
      * 初始化资源池
+     * @return 初始化的资源数量, 超出命名空间配额时为0
      */
-    public void initResourcePool(String poolName, int poolSize, String resourceType) {
+    public long initResourcePool(String poolName, int poolSize, String resourceType) {
         List<Resource> resources = new ArrayList<>();
 
         for (int i = 1; i <= poolSize; i++) {
@@ -59,8 +61,10 @@ public class ResourcePoolService {
             resources.add(resource);
         }
 
-        circularList.initList(poolName, resources);
-        log.info("资源池已初始化: poolName={}, size={}, type={}", poolName, poolSize, resourceType);
+        long size = circularList.initList(poolName, resources);
+        log.info("资源池已初始化: poolName={}, size={}, type={}", poolName, size, resourceType);
+
+        return size;
     }
 
     /**
@@ -90,8 +94,9 @@ public class ResourcePoolService {
 
     /**
      * 查看资源池状态
+     * Redis不可用时返回本地快照(stale)
      */
-    public List<Resource> getPoolStatus(String poolName) {
-        return circularList.viewAll(poolName, Resource.class);
+    public ReadResult<List<Resource>> getPoolStatus(String poolName) {
+        return circularList.readAll(poolName, Resource.class);
     }
 }
@@ -0,0 +1,140 @@
+package com.example.circularlist.service;
+
+import com.example.circularlist.config.VirtualThreads;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * 结构化并发扇出
+ * 每个子任务一个虚拟线程, 同时执行的子任务数不超过max-parallelism, 调用方等待全部完成;
+ * 按完成顺序检查结果, 任一子任务失败时立即取消其余子任务(包括尚未提交的),
+ * 等已经开始执行的子任务全部退出后才抛出异常, 子任务的生命周期不会超出调用范围
+ * (语义同JDK的StructuredTaskScope.ShutdownOnFailure)
+ @author lk
+ @create 2026/10/19-13:52
+ */
+@Slf4j
+@Component
+public class StructuredFanOut implements DisposableBean {
+
+    @Value("${circular-list.virtual-threads.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 一次扇出最多同时执行的子任务数, 避免大批量时瞬间打满Redis连接和下游
+     */
+    @Value("${circular-list.virtual-threads.max-parallelism:64}")
+    private int maxParallelism;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+
+        if (!VirtualThreads.isSupported()) {
+            log.warn("当前JVM不支持虚拟线程, 批量操作保持顺序执行: javaVersion={}", System.getProperty("java.version"));
+            return;
+        }
+
+        executor = VirtualThreads.newPerTaskExecutor();
+        log.info("批量操作已启用虚拟线程扇出: maxParallelism={}", maxParallelism);
+    }
+
+    /**
+     * 是否可以扇出执行
+     */
+    public boolean isEnabled() {
+        return executor != null;
+    }
+
+    /**
+     * 并发执行并按输入顺序返回结果
+     * @param inputs 输入
+     * @param action 子任务
+     * @return 结果列表, 与输入一一对应
+     */
+    public <T, R> List<R> invokeAll(List<T> inputs, Function<T, R> action) {
+        int total = inputs.size();
+        List<R> results = new ArrayList<>(Collections.nCopies(total, null));
+        List<Future<Void>> futures = new ArrayList<>(total);
+        CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+        //cancel只改变Future状态, 不等线程退出; 每个已提交的子任务在phaser上占一个参与方, 退出时注销
+        Phaser running = new Phaser(1);
+        List<AtomicBoolean> claims = new ArrayList<>(total);
+
+        int submitted = 0;
+        int completed = 0;
+
+        try {
+            while (completed < total) {
+                while (submitted < total && submitted - completed < maxParallelism) {
+                    int index = submitted++;
+                    T input = inputs.get(index);
+                    AtomicBoolean claim = new AtomicBoolean();
+                    claims.add(claim);
+                    running.register();
+                    futures.add(completion.submit(() -> {
+                        if (!claim.compareAndSet(false, true)) {
+                            return null;
+                        }
+                        try {
+                            results.set(index, action.apply(input));
+                            return null;
+                        } finally {
+                            running.arriveAndDeregister();
+                        }
+                    }));
+                }
+
+                //按完成顺序等待, 失败的子任务不会被排在前面的慢任务挡住
+                completion.take().get();
+                completed++;
+            }
+            return results;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("扇出任务被中断", e);
+
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("扇出任务执行失败", e.getCause());
+
+        } finally {
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+            //还没开始执行的子任务由调用方代为注销, 之后不会再执行
+            for (AtomicBoolean claim : claims) {
+                if (claim.compareAndSet(false, true)) {
+                    running.arriveAndDeregister();
+                }
+            }
+            running.arriveAndAwaitAdvance();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,248 @@
+-- 广告轮播: 旋转广告列表, 跳过对当前用户已超过频控次数的广告和没有令牌的广告
+-- 旋转、频控检查、令牌桶扣减和点击率排行的展示计数在一次脚本调用中完成, 选中的广告即计为一次展示;
+-- 点击由调用方通过ctr_update.lua上报
+-- 预算用完被移出列表的广告与list_mutate.lua一样递增版本号并追加remove变更记录
+--
+-- KEYS[1]    广告列表
+-- KEYS[2]    版本号
+-- KEYS[3]    变更日志(Stream, 记录ID为 <版本号>-0)
+-- KEYS[4]    投放节奏(令牌桶)Hash, 字段为 adId:rate/burst/tokens/ts/budget
+-- KEYS[5]    点击率计数Hash, 字段为 adId:imp/clk/ts
+-- KEYS[6]    点击率排行ZSET
+-- KEYS[7..N] 频控计数时间桶(Count-Min Sketch), KEYS[7]为当前桶
+-- ARGV[1]    变更日志最大长度(近似裁剪)
+-- ARGV[2]    用户ID(空串表示不做频控)
+-- ARGV[3]    窗口内最大展示次数
+-- ARGV[4]    sketch宽度(每行计数器个数)
+-- ARGV[5]    sketch深度(行数, 最大5)
+-- ARGV[6]    当前桶过期时间(秒)
+-- ARGV[7]    本次最多选出的广告数量
+-- ARGV[8]    点击率计数半衰期(毫秒)
+-- ARGV[9]    点击率先验alpha
+-- ARGV[10]   点击率先验beta
+-- ARGV[11]   1: 按点击率加权轮播 0: 普通轮播
+-- ARGV[12]   加权轮播的随机种子(脚本内的随机数每次调用都从同一个种子开始, 由调用方传入)
+-- ARGV[13]   加权轮播的最小接受概率
+-- ARGV[14]   1: 同一次调用选出的广告不重复 0: 允许重复(列表中的广告少于count时)
+--
+-- 返回 {选中的广告列表, 预算用完被移出列表的广告列表}, 连续转完一整圈都没有可选广告时提前结束;
+-- 调用方按被移出的广告扣减列表登记的用量
+
+local maxLength = ARGV[1]
+local userId = ARGV[2]
+local cap = tonumber(ARGV[3])
+local width = tonumber(ARGV[4])
+local depth = tonumber(ARGV[5])
+local ttl = tonumber(ARGV[6])
+local count = tonumber(ARGV[7])
+local halfLife = tonumber(ARGV[8])
+local alpha = tonumber(ARGV[9])
+local beta = tonumber(ARGV[10])
+local weighted = ARGV[11] == '1'
+local minWeight = tonumber(ARGV[13])
+local distinct = ARGV[14] == '1'
+local firstBucket = 7
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+-- 列表元素由Jackson序列化为JSON字符串, 需先去掉外层字符串编码
+local function unwrap(raw)
+    local ok, value = pcall(cjson.decode, raw)
+    if ok and type(value) == 'string' then
+        return value
+    end
+    return raw
+end
+
+local function adIdOf(raw)
+    local ok, ad = pcall(cjson.decode, unwrap(raw))
+    if ok and type(ad) == 'table' and type(ad.adId) == 'string' then
+        return ad.adId
+    end
+    return raw
+end
+
+-- 每行取sha1的8位十六进制作为独立哈希
+local function offsetsOf(adId)
+    local hash = redis.sha1hex(userId .. '|' .. adId)
+    local offsets = {}
+    for row = 0, depth - 1 do
+        local h = tonumber(string.sub(hash, row * 8 + 1, row * 8 + 8), 16)
+        offsets[#offsets + 1] = '#' .. (row * width + h % width)
+    end
+    return offsets
+end
+
+-- 窗口内估计展示次数: 各桶取行最小值后求和
+local function estimate(offsets)
+    local total = 0
+    for i = firstBucket, #KEYS do
+        local cmd = {'BITFIELD', KEYS[i]}
+        for _, offset in ipairs(offsets) do
+            cmd[#cmd + 1] = 'GET'
+            cmd[#cmd + 1] = 'u16'
+            cmd[#cmd + 1] = offset
+        end
+        local counts = redis.call(unpack(cmd))
+        local min = counts[1]
+        for j = 2, #counts do
+            if counts[j] < min then
+                min = counts[j]
+            end
+        end
+        total = total + min
+        if total >= cap then
+            return total
+        end
+    end
+    return total
+end
+
+local function increment(offsets)
+    local cmd = {'BITFIELD', KEYS[firstBucket], 'OVERFLOW', 'SAT'}
+    for _, offset in ipairs(offsets) do
+        cmd[#cmd + 1] = 'INCRBY'
+        cmd[#cmd + 1] = 'u16'
+        cmd[#cmd + 1] = offset
+        cmd[#cmd + 1] = 1
+    end
+    redis.call(unpack(cmd))
+    redis.call('EXPIRE', KEYS[firstBucket], ttl)
+end
+
+-- 点击率排行的展示计数, 与ctr_update.lua一致
+local function countImpression(adId)
+    local counts = redis.call('HMGET', KEYS[5], adId .. ':imp', adId .. ':clk', adId .. ':ts')
+    local factor = 2 ^ (-math.max(0, now - (tonumber(counts[3]) or now)) / halfLife)
+    local imp = (tonumber(counts[1]) or 0) * factor + 1
+    local clk = (tonumber(counts[2]) or 0) * factor
+
+    redis.call('HSET', KEYS[5], adId .. ':imp', tostring(imp), adId .. ':clk', tostring(clk), adId .. ':ts', now)
+    redis.call('ZADD', KEYS[6], (clk + alpha) / (imp + alpha + beta), adId)
+end
+
+-- 加权轮播: 按 点击率 / 最高点击率 的概率接受广告(不低于最小接受概率), 没有排行数据的广告按先验点击率
+local maxScore
+if weighted then
+    math.randomseed(tonumber(ARGV[12]))
+    local top = redis.call('ZREVRANGE', KEYS[6], 0, 0, 'WITHSCORES')
+    maxScore = math.max(tonumber(top[2]) or 0, alpha / (alpha + beta))
+end
+
+local function accept(adId)
+    if not weighted or maxScore <= 0 then
+        return true
+    end
+    local score = tonumber(redis.call('ZSCORE', KEYS[6], adId)) or alpha / (alpha + beta)
+    return math.random() < math.max(minWeight, score / maxScore)
+end
+
+-- 令牌桶: 读取时按经过时间惰性补充令牌
+-- 返回 'ok' 可投放, 'last' 可投放且这是预算内最后一次, 'wait' 暂无令牌, 'exhausted' 总预算已用完
+local function takeToken(adId)
+    local pacing = redis.call('HMGET', KEYS[4], adId .. ':rate', adId .. ':burst', adId .. ':tokens', adId .. ':ts', adId .. ':budget')
+    local rate = tonumber(pacing[1])
+    local budget = tonumber(pacing[5])
+    if not rate and not budget then
+        return 'ok'
+    end
+    if budget and budget <= 0 then
+        return 'exhausted'
+    end
+
+    if rate then
+        local burst = tonumber(pacing[2]) or 1
+        local tokens = tonumber(pacing[3]) or burst
+        local ts = tonumber(pacing[4]) or now
+        tokens = math.min(burst, tokens + math.max(0, now - ts) * rate / 1000)
+        if tokens < 1 then
+            redis.call('HSET', KEYS[4], adId .. ':tokens', tostring(tokens), adId .. ':ts', now)
+            return 'wait'
+        end
+        redis.call('HSET', KEYS[4], adId .. ':tokens', tostring(tokens - 1), adId .. ':ts', now)
+    end
+
+    if budget and redis.call('HINCRBY', KEYS[4], adId .. ':budget', -1) <= 0 then
+        return 'last'
+    end
+    return 'ok'
+end
+
+-- 移出列表并记录变更, 版本号和变更记录的格式与list_mutate.lua一致
+local function remove(raw)
+    redis.call('LREM', KEYS[1], 1, raw)
+
+    redis.call('SET', KEYS[2], time[1] .. string.format('%06d', tonumber(time[2])), 'NX')
+    local version = redis.call('INCR', KEYS[2])
+    redis.call('PERSIST', KEYS[2])
+    local id = string.format('%d-0', version)
+
+    local added = redis.pcall('XADD', KEYS[3], 'MAXLEN', '~', maxLength, id, 'op', 'remove', 'item', raw)
+    if type(added) == 'table' and added.err then
+        redis.call('DEL', KEYS[3])
+        redis.call('XADD', KEYS[3], 'MAXLEN', '~', maxLength, id, 'op', 'remove', 'item', raw)
+    end
+end
+
+local picked = {}
+local pickedSet = {}
+local removed = {}
+local misses = 0
+local sampled = 0
+while #picked < count do
+    local size = redis.call('LLEN', KEYS[1])
+    if misses >= size then
+        if sampled == 0 then
+            -- 所有广告都已达到频控上限、暂无令牌或本次已选过
+            break
+        end
+        -- 整圈都只是没被加权采样选中, 本次改为普通轮播, 保证有可选广告时一定返回
+        weighted = false
+        misses = 0
+        sampled = 0
+    end
+
+    local raw = redis.call('RPOPLPUSH', KEYS[1], KEYS[1])
+    local adId = adIdOf(raw)
+    local offsets
+    if userId ~= '' then
+        offsets = offsetsOf(adId)
+    end
+
+    local token = 'wait'
+    if distinct and pickedSet[raw] then
+        -- 本次已选过, 不重复扣减令牌和频控, 按未命中处理
+        token = 'picked'
+    elseif not offsets or estimate(offsets) < cap then
+        if accept(adId) then
+            token = takeToken(adId)
+        else
+            token = 'sampled'
+            sampled = sampled + 1
+        end
+    end
+
+    if token == 'ok' or token == 'last' then
+        if token == 'last' then
+            remove(raw)
+            removed[#removed + 1] = raw
+        end
+        if offsets then
+            increment(offsets)
+        end
+        countImpression(adId)
+        picked[#picked + 1] = raw
+        pickedSet[raw] = true
+        misses = 0
+        sampled = 0
+    elseif token == 'exhausted' then
+        -- 预算用完的广告直接移出轮播(刚被推到列表头部), 列表变短, 不计入未命中次数
+        remove(raw)
+        removed[#removed + 1] = raw
+    else
+        misses = misses + 1
+    end
+end
+
+return {picked, removed}
@@ -0,0 +1,23 @@
+-- 总容量调整
+--
+-- KEYS[1] 容量哈希, 字段 total(总容量) / lease:<桶起始毫秒>(预留租约)
+-- ARGV[1] 操作: set(重置总容量并清空全部预留) / add(增减总容量)
+-- ARGV[2] 总容量(set) 或 变化量(add)
+--
+-- 返回调整后的总容量, 不会小于0; add时没有容量记录返回-1且不创建记录(没有记录表示不做准入控制)
+
+if ARGV[1] == 'set' then
+    local total = math.max(tonumber(ARGV[2]), 0)
+    redis.call('DEL', KEYS[1])
+    redis.call('HSET', KEYS[1], 'total', total)
+    return total
+end
+
+local total = redis.call('HGET', KEYS[1], 'total')
+if not total then
+    return -1
+end
+
+total = math.max(tonumber(total) + tonumber(ARGV[2]), 0)
+redis.call('HSET', KEYS[1], 'total', total)
+return total
@@ -0,0 +1,52 @@
+-- 容量释放: 任务完成或预留未用完时归还容量, 从最早的租约开始扣减, 已过期的租约不再归还
+--
+-- KEYS[1] 容量哈希, 字段 total(总容量) / lease:<桶起始毫秒>(该时间桶内仍未归还的预留数量)
+-- ARGV[1] 释放的数量
+-- ARGV[2] 租约时长(毫秒)
+--
+-- 返回释放后剩余容量, 没有容量记录时返回-1
+
+local total = redis.call('HGET', KEYS[1], 'total')
+if not total then
+    return -1
+end
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local ttl = tonumber(ARGV[2])
+
+local used = 0
+local leases = {}
+local fields = redis.call('HGETALL', KEYS[1])
+for i = 1, #fields, 2 do
+    local start = string.match(fields[i], '^lease:(%d+)$')
+    if start then
+        if tonumber(start) + ttl <= now then
+            redis.call('HDEL', KEYS[1], fields[i])
+        else
+            local count = tonumber(fields[i + 1])
+            used = used + count
+            table.insert(leases, {tonumber(start), fields[i], count})
+        end
+    end
+end
+
+table.sort(leases, function(a, b) return a[1] < b[1] end)
+
+local remaining = tonumber(ARGV[1])
+for _, lease in ipairs(leases) do
+    if remaining <= 0 then
+        break
+    end
+
+    local released = math.min(remaining, lease[3])
+    if released == lease[3] then
+        redis.call('HDEL', KEYS[1], lease[2])
+    else
+        redis.call('HINCRBY', KEYS[1], lease[2], -released)
+    end
+    used = used - released
+    remaining = remaining - released
+end
+
+return tonumber(total) - used
@@ -0,0 +1,44 @@
+-- 容量预留: 从集群剩余容量中批量预留, 容量不足时只预留剩余部分
+-- 预留按Redis时间分桶记录为租约, 超过租约时长仍未归还的预留自动失效, 调用方崩溃或没有回报完成时容量不会被永久占用;
+-- 租约时长按时间桶取整, 实际有效期在 [租约时长 - 桶长度, 租约时长] 之间
+--
+-- KEYS[1] 容量哈希, 字段 total(总容量) / lease:<桶起始毫秒>(该时间桶内仍未归还的预留数量)
+-- ARGV[1] 请求预留的数量
+-- ARGV[2] 租约时长(毫秒)
+-- ARGV[3] 时间桶长度(毫秒)
+--
+-- 返回 {预留数量, 预留后剩余容量}, 没有容量记录(不做准入控制)时返回 {-1, -1}
+
+local total = redis.call('HGET', KEYS[1], 'total')
+if not total then
+    return {-1, -1}
+end
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local ttl = tonumber(ARGV[2])
+
+-- 清理过期租约, 汇总仍有效的预留
+local used = 0
+local fields = redis.call('HGETALL', KEYS[1])
+for i = 1, #fields, 2 do
+    local start = string.match(fields[i], '^lease:(%d+)$')
+    if start then
+        if tonumber(start) + ttl <= now then
+            redis.call('HDEL', KEYS[1], fields[i])
+        else
+            used = used + tonumber(fields[i + 1])
+        end
+    end
+end
+
+local available = tonumber(total) - used
+local granted = math.min(tonumber(ARGV[1]), available)
+
+if granted <= 0 then
+    return {0, math.max(available, 0)}
+end
+
+local bucket = now - now % tonumber(ARGV[3])
+redis.call('HINCRBY', KEYS[1], 'lease:' .. string.format('%d', bucket), granted)
+return {granted, available - granted}
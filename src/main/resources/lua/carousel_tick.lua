@@ -0,0 +1,49 @@
+-- 定时轮播: 由leader在每个tick推进一次轮播游标, 并发布当前元素
+-- 轮播使用独立的游标, 不旋转列表本身, 与按请求推进的读取互不影响;
+-- LINDEX为O(N), 每个tick只执行一次
+--
+-- KEYS[1] 列表
+-- KEYS[2] leader锁
+-- KEYS[3] 当前元素, 值为 "tick序号|元素JSON"
+-- KEYS[4] 轮播游标
+-- ARGV[1] 实例ID
+-- ARGV[2] leader锁过期时间(毫秒)
+-- ARGV[3] 当前tick序号
+-- ARGV[4] 当前元素过期时间(毫秒)
+--
+-- 返回1表示本次推进了列表, 0表示不是leader或该tick已推进过
+
+local owner = redis.call('GET', KEYS[2])
+if owner and owner ~= ARGV[1] then
+    return 0
+end
+redis.call('SET', KEYS[2], ARGV[1], 'PX', ARGV[2])
+
+-- 同一个tick只推进一次, 避免leader切换时重复推进
+local tick = tonumber(ARGV[3])
+local current = redis.call('GET', KEYS[3])
+if current then
+    local currentTick = tonumber(string.match(current, '^(%d+)|'))
+    if currentTick and currentTick >= tick then
+        return 0
+    end
+end
+
+local len = redis.call('LLEN', KEYS[1])
+if len == 0 then
+    redis.call('DEL', KEYS[3])
+    return 0
+end
+
+-- 从表尾向表头遍历, 与RPOPLPUSH的轮询顺序一致
+local cursor = redis.call('INCR', KEYS[4])
+local raw = redis.call('LINDEX', KEYS[1], -((cursor - 1) % len) - 1)
+
+-- 列表元素由Jackson序列化为JSON字符串, 发布时去掉外层字符串编码, 读取方直接反序列化
+local ok, value = pcall(cjson.decode, raw)
+if not ok or type(value) ~= 'string' then
+    value = raw
+end
+
+redis.call('SET', KEYS[3], ARGV[3] .. '|' .. value, 'PX', ARGV[4])
+return 1
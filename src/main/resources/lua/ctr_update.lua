@@ -0,0 +1,44 @@
+-- 广告点击率排行: 按展示/点击事件增量更新时间衰减计数和平滑后的点击率
+-- 计数按半衰期指数衰减, 点击率使用Beta先验平滑: (点击 + alpha) / (展示 + alpha + beta)
+-- 轮播选出的广告由ad_next.lua直接计数展示; 没有展示增量的事件(点击)要求该广告已有展示计数, 否则忽略:
+-- 未展示过或已移除(removeAd删除计数)的广告不能通过点击写入计数和排行, 计数Hash和排行只包含展示过的广告
+--
+-- KEYS[1] 计数Hash, 字段为 adId:imp / adId:clk / adId:ts
+-- KEYS[2] 点击率排行ZSET
+-- ARGV[1] 半衰期(毫秒)
+-- ARGV[2] 先验alpha
+-- ARGV[3] 先验beta
+-- ARGV[4..] 每三个一组: 广告ID, 展示增量, 点击增量
+--
+-- 返回最后一个广告更新后的点击率, 最后一个事件被忽略时返回nil
+
+local halfLife = tonumber(ARGV[1])
+local alpha = tonumber(ARGV[2])
+local beta = tonumber(ARGV[3])
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local score
+for i = 4, #ARGV, 3 do
+    local adId = ARGV[i]
+    local impDelta = tonumber(ARGV[i + 1])
+    local counts = redis.call('HMGET', KEYS[1], adId .. ':imp', adId .. ':clk', adId .. ':ts')
+
+    if not counts[1] and impDelta <= 0 then
+        score = nil
+    else
+        local factor = 2 ^ (-math.max(0, now - (tonumber(counts[3]) or now)) / halfLife)
+        local imp = (tonumber(counts[1]) or 0) * factor + impDelta
+        local clk = (tonumber(counts[2]) or 0) * factor + tonumber(ARGV[i + 2])
+
+        redis.call('HSET', KEYS[1], adId .. ':imp', tostring(imp), adId .. ':clk', tostring(clk), adId .. ':ts', now)
+        score = (clk + alpha) / (imp + alpha + beta)
+        redis.call('ZADD', KEYS[2], score, adId)
+    end
+end
+
+if not score then
+    return false
+end
+return tostring(score)
@@ -0,0 +1,50 @@
+-- 获取列表自某个版本以来的成员变更
+-- 日志中连续保留了since之后的全部记录时返回增量, 否则(已被裁剪、跨过init/restore、版本号不匹配)返回当前全部元素
+--
+-- KEYS[1] 列表
+-- KEYS[2] 版本号
+-- KEYS[3] 变更日志(Stream)
+-- ARGV[1] 客户端已同步到的版本号
+-- ARGV[2] 增量最多包含的记录数, 超过时返回全量
+--
+-- 返回 {版本号, 'delta', 版本号1, 操作1, 元素1, ...} 或 {版本号, 'snapshot', 元素1, 元素2, ...}
+-- 版本号以字符串返回, 没有元素的操作(clear)元素为空字符串
+
+local version = redis.call('GET', KEYS[2]) or '0'
+local current = tonumber(version)
+local since = tonumber(ARGV[1])
+
+if since == current then
+    return {version, 'delta'}
+end
+
+if since < current and current - since <= tonumber(ARGV[2]) then
+    local first = string.format('%d-0', since + 1)
+    local entries = redis.call('XRANGE', KEYS[3], first, '+')
+
+    if #entries == current - since and entries[1][1] == first then
+        local result = {version, 'delta'}
+        local complete = true
+
+        for _, entry in ipairs(entries) do
+            local fields = entry[2]
+            if fields[2] == 'init' or fields[2] == 'restore' then
+                complete = false
+                break
+            end
+            table.insert(result, string.sub(entry[1], 1, -3))
+            table.insert(result, fields[2])
+            table.insert(result, fields[4] or '')
+        end
+
+        if complete then
+            return result
+        end
+    end
+end
+
+local result = {version, 'snapshot'}
+for _, item in ipairs(redis.call('LRANGE', KEYS[1], 0, -1)) do
+    table.insert(result, item)
+end
+return result
@@ -0,0 +1,67 @@
+-- 列表成员变更: 修改列表并在同一个脚本中递增版本号、追加变更记录, 读取方看到的版本号和列表内容始终一致
+--
+-- KEYS[1] 列表
+-- KEYS[2] 版本号
+-- KEYS[3] 变更日志(Stream, 记录ID为 <版本号>-0)
+-- ARGV[1] 操作: init(替换全部元素) / restore(数据丢失后回填) / add / remove / clear
+-- ARGV[2] 变更日志最大长度(近似裁剪)
+-- ARGV[3..] 元素, init为全部元素, add/remove为一个元素
+--
+-- 返回 {版本号, 影响的元素数量}, 没有实际变更时不递增版本号
+-- 版本号不存在时从Redis TIME的微秒数开始, 数据丢失或墓碑过期后重建的版本号不会与旧版本号重复, 也不依赖各实例的时钟;
+-- 其他移出成员的脚本(ad_next.lua)按同样的方式递增版本号、追加变更记录
+
+local op = ARGV[1]
+local affected
+
+if op == 'init' then
+    redis.call('DEL', KEYS[1])
+    for i = 3, #ARGV, 1000 do
+        redis.call('RPUSH', KEYS[1], unpack(ARGV, i, math.min(i + 999, #ARGV)))
+    end
+    affected = #ARGV - 2
+elseif op == 'restore' then
+    -- 只在数据丢失后回填: 列表和版本号都不存在; 被清空、移空的列表保留版本号, 被淘汰的列表保留版本号作为墓碑
+    if redis.call('EXISTS', KEYS[1]) == 1 or redis.call('EXISTS', KEYS[2]) == 1 then
+        return {tonumber(redis.call('GET', KEYS[2]) or '0'), 0}
+    end
+    for i = 3, #ARGV, 1000 do
+        redis.call('RPUSH', KEYS[1], unpack(ARGV, i, math.min(i + 999, #ARGV)))
+    end
+    affected = #ARGV - 2
+elseif op == 'add' then
+    redis.call('RPUSH', KEYS[1], ARGV[3])
+    affected = 1
+elseif op == 'remove' then
+    affected = redis.call('LREM', KEYS[1], 1, ARGV[3])
+elseif op == 'clear' then
+    affected = redis.call('DEL', KEYS[1])
+else
+    return redis.error_reply('unknown op: ' .. op)
+end
+
+if affected == 0 and op ~= 'init' then
+    return {tonumber(redis.call('GET', KEYS[2]) or '0'), 0}
+end
+
+local time = redis.call('TIME')
+redis.call('SET', KEYS[2], time[1] .. string.format('%06d', tonumber(time[2])), 'NX')
+local version = redis.call('INCR', KEYS[2])
+-- 淘汰留下的墓碑带有过期时间, 列表重新创建后版本号不再过期
+redis.call('PERSIST', KEYS[2])
+local id = string.format('%d-0', version)
+
+local fields = {'op', op}
+if op == 'add' or op == 'remove' then
+    fields[3] = 'item'
+    fields[4] = ARGV[3]
+end
+
+-- 版本号被单独删除时日志中可能有更大的ID, 重建日志, 读取方会退回全量
+local added = redis.pcall('XADD', KEYS[3], 'MAXLEN', '~', ARGV[2], id, unpack(fields))
+if type(added) == 'table' and added.err then
+    redis.call('DEL', KEYS[3])
+    redis.call('XADD', KEYS[3], 'MAXLEN', '~', ARGV[2], id, unpack(fields))
+end
+
+return {version, affected}
@@ -0,0 +1,61 @@
+-- 列表登记: 写入前按命名空间配额检查并更新列表的元素数量和近似内存
+--
+-- KEYS[1] 命名空间哈希, 字段 lists / items / bytes 为命名空间汇总, <列表名>:items / <列表名>:bytes 为单个列表
+-- KEYS[2] 命名空间访问时间ZSET(成员为列表名, 分数为最后访问时间)
+-- ARGV[1] 列表名
+-- ARGV[2] 元素数量(替换模式下为新值, 增量模式下为变化量)
+-- ARGV[3] 字节数(同上)
+-- ARGV[4] 1: 替换(初始化列表) 0: 增量(添加/移除元素)
+-- ARGV[5] 命名空间最多列表数
+-- ARGV[6] 命名空间最多元素数
+-- ARGV[7] 命名空间最多字节数
+-- ARGV[8] 当前时间(毫秒)
+--
+-- 返回 {1, 列表元素数, 列表字节数}, 超出配额时返回 {0, 超出的配额名}
+
+local list = ARGV[1]
+local itemsField = list .. ':items'
+local bytesField = list .. ':bytes'
+local replace = ARGV[4] == '1'
+
+local oldItems = redis.call('HGET', KEYS[1], itemsField)
+local registered = oldItems ~= false
+oldItems = tonumber(oldItems or '0')
+local oldBytes = tonumber(redis.call('HGET', KEYS[1], bytesField) or '0')
+
+-- 未登记的列表移除元素时不登记
+if not registered and not replace and tonumber(ARGV[2]) <= 0 then
+    return {1, 0, 0}
+end
+
+local newItems, newBytes
+if replace then
+    newItems = tonumber(ARGV[2])
+    newBytes = tonumber(ARGV[3])
+else
+    newItems = math.max(oldItems + tonumber(ARGV[2]), 0)
+    newBytes = math.max(oldBytes + tonumber(ARGV[3]), 0)
+end
+
+local lists = tonumber(redis.call('HGET', KEYS[1], 'lists') or '0')
+local items = tonumber(redis.call('HGET', KEYS[1], 'items') or '0') - oldItems + newItems
+local bytes = tonumber(redis.call('HGET', KEYS[1], 'bytes') or '0') - oldBytes + newBytes
+
+-- 只在增长时检查配额, 缩小总是允许
+if not registered and lists + 1 > tonumber(ARGV[5]) then
+    return {0, 'lists'}
+end
+if newItems > oldItems and items > tonumber(ARGV[6]) then
+    return {0, 'items'}
+end
+if newBytes > oldBytes and bytes > tonumber(ARGV[7]) then
+    return {0, 'bytes'}
+end
+
+if not registered then
+    lists = lists + 1
+end
+
+redis.call('HSET', KEYS[1], 'lists', lists, 'items', items, 'bytes', bytes, itemsField, newItems, bytesField, newBytes)
+redis.call('ZADD', KEYS[2], ARGV[8], list)
+return {1, newItems, newBytes}
@@ -0,0 +1,30 @@
+-- 列表注销: 从命名空间汇总中扣除列表的元素数量和内存
+--
+-- KEYS[1] 命名空间哈希
+-- KEYS[2] 命名空间访问时间ZSET
+-- ARGV[1] 列表名
+-- ARGV[2] 空闲截止时间(毫秒), 最后访问时间晚于它时不注销(淘汰期间被访问过); 为空时无条件注销
+--
+-- 返回1表示已注销, 0表示未登记或不再空闲
+
+local list = ARGV[1]
+
+if ARGV[2] ~= '' then
+    local lastAccess = redis.call('ZSCORE', KEYS[2], list)
+    if lastAccess and tonumber(lastAccess) > tonumber(ARGV[2]) then
+        return 0
+    end
+end
+
+local items = redis.call('HGET', KEYS[1], list .. ':items')
+redis.call('ZREM', KEYS[2], list)
+if not items then
+    return 0
+end
+
+local bytes = tonumber(redis.call('HGET', KEYS[1], list .. ':bytes') or '0')
+redis.call('HDEL', KEYS[1], list .. ':items', list .. ':bytes')
+redis.call('HINCRBY', KEYS[1], 'lists', -1)
+redis.call('HINCRBY', KEYS[1], 'items', -tonumber(items))
+redis.call('HINCRBY', KEYS[1], 'bytes', -bytes)
+return 1
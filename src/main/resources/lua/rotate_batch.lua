@@ -0,0 +1,15 @@
+-- 批量循环获取: 连续执行count次RPOPLPUSH, 一次往返返回全部元素
+--
+-- KEYS[1] 列表
+-- ARGV[1] 获取数量
+
+local count = tonumber(ARGV[1])
+local items = {}
+for _ = 1, count do
+    local raw = redis.call('RPOPLPUSH', KEYS[1], KEYS[1])
+    if not raw then
+        break
+    end
+    items[#items + 1] = raw
+end
+return items
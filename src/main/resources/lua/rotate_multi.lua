@@ -0,0 +1,35 @@
+-- 多列表循环获取: 每个列表推进一次, 一次往返返回每个列表的一个元素
+-- 多个列表需要在同一个slot(列表名使用相同的hash tag, 如 {ads}:电子产品)
+--
+-- KEYS[1..n] 列表
+-- ARGV[1] 1: 各列表返回的元素不重复 0: 允许重复
+--
+-- 返回与KEYS一一对应的元素, 列表为空(或去重后没有可选元素)时为空字符串
+
+local distinct = ARGV[1] == '1'
+local picked = {}
+local items = {}
+
+for i, key in ipairs(KEYS) do
+    local item = ''
+    local attempts = distinct and redis.call('LLEN', key) or 1
+
+    -- 去重时继续推进, 直到找到未选过的元素或转完一圈
+    for _ = 1, attempts do
+        local raw = redis.call('RPOPLPUSH', key, key)
+        if not raw then
+            break
+        end
+        if not distinct or not picked[raw] then
+            item = raw
+            break
+        end
+    end
+
+    if item ~= '' then
+        picked[item] = true
+    end
+    items[i] = item
+end
+
+return items
@@ -0,0 +1,75 @@
+-- 洗牌轮询: 每一轮(epoch)按不同的伪随机排列遍历列表, 每个元素每轮恰好返回一次
+-- 排列由 epoch种子 + 游标 计算(Feistel网络 + cycle walking), 不保存洗牌结果, 也不修改列表
+-- 按下标读取使用 下标->元素 的Hash索引(HGET为O(1)), 列表上的LINDEX为O(N);
+-- 索引记录建立时的版本号和长度, 成员变化(版本号或长度不一致)后第一次调用时用LRANGE重建, 重建为O(N), 每次变更只发生一次
+--
+-- KEYS[1] 列表
+-- KEYS[2] 游标计数器
+-- KEYS[3] 版本号(由list_mutate维护)
+-- KEYS[4] 下标索引(Hash, 字段 v=版本号 n=长度 0..n-1=元素)
+-- ARGV[1] 基础种子
+-- ARGV[2] 获取数量
+--
+-- 返回按排列顺序选出的元素; 轮内列表长度变化时从新长度重新划分epoch
+
+local n = redis.call('LLEN', KEYS[1])
+local count = tonumber(ARGV[2])
+if n == 0 or count <= 0 then
+    return {}
+end
+
+-- 列表只轮转不改变成员时索引仍然有效: 排列只要求每个元素对应一个下标, 不要求与列表顺序一致
+local version = redis.call('GET', KEYS[3]) or '0'
+local meta = redis.call('HMGET', KEYS[4], 'v', 'n')
+if meta[1] ~= version or tonumber(meta[2]) ~= n then
+    redis.call('DEL', KEYS[4])
+    for start = 0, n - 1, 1000 do
+        local chunk = redis.call('LRANGE', KEYS[1], start, start + 999)
+        local fields = {}
+        for i, item in ipairs(chunk) do
+            fields[#fields + 1] = start + i - 1
+            fields[#fields + 1] = item
+        end
+        redis.call('HSET', KEYS[4], unpack(fields))
+    end
+    redis.call('HSET', KEYS[4], 'v', version, 'n', n)
+end
+
+-- 排列定义域为不小于n的2^bits(bits为偶数), Feistel左右各一半
+local bits = 2
+while 2 ^ bits < n do
+    bits = bits + 2
+end
+local half = 2 ^ (bits / 2)
+
+local function permute(x, seed)
+    local left = math.floor(x / half)
+    local right = x % half
+    for round = 1, 4 do
+        local f = tonumber(string.sub(redis.sha1hex(seed .. ':' .. round .. ':' .. right), 1, 8), 16) % half
+        left, right = right, bit.bxor(left, f)
+    end
+    return left * half + right
+end
+
+local last = redis.call('INCRBY', KEYS[2], count)
+local items = {}
+local epoch, seed
+
+for cursor = last - count, last - 1 do
+    local currentEpoch = math.floor(cursor / n)
+    if currentEpoch ~= epoch then
+        epoch = currentEpoch
+        seed = redis.sha1hex(ARGV[1] .. ':' .. epoch)
+    end
+
+    -- 超出[0, n)时继续置换, 直到落回范围内
+    local index = permute(cursor % n, seed)
+    while index >= n do
+        index = permute(index, seed)
+    end
+
+    items[#items + 1] = redis.call('HGET', KEYS[4], index)
+end
+
+return items
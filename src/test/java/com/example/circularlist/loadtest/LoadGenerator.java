@@ -0,0 +1,402 @@
+package com.example.circularlist.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * HTTP压测工具
+ * 按开环到达率(固定的请求发起时间表)压测本地实例, 不因服务变慢而降低发压速度;
+ * 延迟从计划发起时间开始计算(协同遗漏修正), 同时记录从实际发出开始计算的服务时间作对比;
+ * 结果输出为JSON和CSV, 便于不同版本之间比较
+ *
+ * 用法: scripts/test/load-test.sh [--rate=200] [--duration=30] [--concurrency=64] ...
+ @author lk
+ @create 2026/10/19-15:30
+ */
+public class LoadGenerator {
+
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private static final Pattern ASSIGNED_TASKS = Pattern.compile("\"assignedTasks\":(\\d+)");
+
+    /**
+     * 压测的接口
+     */
+    private static class Endpoint {
+        private final String name;
+        private final String method;
+        private final String path;
+        private final int weight;
+
+        /**
+         * 计划发起时间开始的延迟(微秒)
+         */
+        private final List<Long> latencies = new ArrayList<>();
+
+        /**
+         * 实际发出开始的服务时间(微秒)
+         */
+        private final List<Long> serviceTimes = new ArrayList<>();
+
+        private final Map<Integer, AtomicLong> statuses = new LinkedHashMap<>();
+
+        private final AtomicLong errors = new AtomicLong();
+
+        private Endpoint(String name, String method, String path, int weight) {
+            this.name = name;
+            this.method = method;
+            this.path = path;
+            this.weight = weight;
+        }
+
+        private synchronized void record(long latencyMicros, long serviceMicros, int status) {
+            latencies.add(latencyMicros);
+            serviceTimes.add(serviceMicros);
+            statuses.computeIfAbsent(status, s -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+
+        String baseUrl = options.getOrDefault("base-url", "http://localhost:9005/api/circular");
+        double rate = Double.parseDouble(options.getOrDefault("rate", "200"));
+        int durationSeconds = Integer.parseInt(options.getOrDefault("duration", "30"));
+        int warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "64"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        Path outDir = Paths.get(options.getOrDefault("out", "target/loadtest"));
+        boolean setup = Boolean.parseBoolean(options.getOrDefault("setup", "true"));
+
+        String mix = options.getOrDefault("mix", "workers-next:30,tasks-assign:10,ads-next:40,ads-batch:10,pool-acquire:10");
+        List<Endpoint> endpoints = parseMix(mix);
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+        if (setup) {
+            setup(client, baseUrl);
+        }
+
+        System.out.printf("压测开始: baseUrl=%s, rate=%.0f/s, duration=%ds, warmup=%ds, concurrency=%d%n",
+                baseUrl, rate, durationSeconds, warmupSeconds, concurrency);
+
+        //预热阶段的结果丢弃
+        if (warmupSeconds > 0) {
+            run(client, baseUrl, parseMix(mix), rate, warmupSeconds, concurrency, seed);
+        }
+
+        long elapsedNanos = run(client, baseUrl, endpoints, rate, durationSeconds, concurrency, seed);
+
+        Map<String, Object> summary = summarize(endpoints, elapsedNanos);
+        summary.put("baseUrl", baseUrl);
+        summary.put("rate", rate);
+        summary.put("durationSeconds", durationSeconds);
+        summary.put("concurrency", concurrency);
+        summary.put("seed", seed);
+
+        print(endpoints, elapsedNanos);
+        write(outDir, endpoints, summary, elapsedNanos);
+    }
+
+    /**
+     * 按开环时间表发起请求
+     * 第i个请求的计划发起时间为 start + i / rate, 到点即提交, 不等待前面的请求完成
+     * @return 实际耗时(纳秒)
+     */
+    private static long run(HttpClient client, String baseUrl, List<Endpoint> endpoints, double rate,
+                            int durationSeconds, int concurrency, long seed) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long total = (long) (rate * durationSeconds);
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        int totalWeight = endpoints.stream().mapToInt(e -> e.weight).sum();
+        Random random = new Random(seed);
+
+        long start = System.nanoTime();
+
+        for (long i = 0; i < total; i++) {
+            long intended = start + (long) (i * intervalNanos);
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            Endpoint endpoint = pick(endpoints, random.nextInt(totalWeight));
+            workers.execute(() -> call(client, baseUrl, endpoint, intended));
+        }
+
+        workers.shutdown();
+        workers.awaitTermination(durationSeconds + 60L, TimeUnit.SECONDS);
+
+        return System.nanoTime() - start;
+    }
+
+    private static void call(HttpClient client, String baseUrl, Endpoint endpoint, long intended) {
+        long sent = System.nanoTime();
+
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + endpoint.path))
+                    .timeout(Duration.ofSeconds(30))
+                    .method(endpoint.method, HttpRequest.BodyPublishers.noBody())
+                    .build();
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            long done = System.nanoTime();
+
+            endpoint.record((done - intended) / 1000, (done - sent) / 1000, response.statusCode());
+
+            //分配成功的任务立即完成, 避免集群容量被压测耗尽(不计入延迟)
+            if ("tasks-assign".equals(endpoint.name) && response.statusCode() == 200) {
+                Matcher matcher = ASSIGNED_TASKS.matcher(response.body());
+                if (matcher.find()) {
+                    send(client, "POST", baseUrl + "/tasks/complete?count=" + matcher.group(1));
+                }
+            }
+
+        } catch (IOException e) {
+            endpoint.errors.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 准备压测数据: 工作节点、广告和资源池
+     */
+    private static void setup(HttpClient client, String baseUrl) throws Exception {
+        send(client, "POST", baseUrl + "/workers/init?count=9");
+        send(client, "POST", baseUrl + "/ads/init?count=20");
+        send(client, "POST", baseUrl + "/pool/init?poolName=loadtest&size=50");
+    }
+
+    private static int send(HttpClient client, String method, String url) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(30))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static Endpoint pick(List<Endpoint> endpoints, int ticket) {
+        for (Endpoint endpoint : endpoints) {
+            ticket -= endpoint.weight;
+            if (ticket < 0) {
+                return endpoint;
+            }
+        }
+        return endpoints.get(endpoints.size() - 1);
+    }
+
+    /**
+     * 解析接口权重, 格式: 名称:权重,名称:权重
+     */
+    private static List<Endpoint> parseMix(String mix) {
+        List<Endpoint> endpoints = new ArrayList<>();
+
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split(":");
+            int weight = pair.length > 1 ? Integer.parseInt(pair[1]) : 1;
+
+            switch (pair[0]) {
+                case "workers-next":
+                    endpoints.add(new Endpoint(pair[0], "GET", "/workers/next", weight));
+                    break;
+                case "tasks-assign":
+                    endpoints.add(new Endpoint(pair[0], "POST", "/tasks/assign?count=1", weight));
+                    break;
+                case "ads-next":
+                    endpoints.add(new Endpoint(pair[0], "GET", "/ads/next", weight));
+                    break;
+                case "ads-batch":
+                    endpoints.add(new Endpoint(pair[0], "GET", "/ads/batch?count=5", weight));
+                    break;
+                case "pool-acquire":
+                    endpoints.add(new Endpoint(pair[0], "GET", "/pool/acquire?poolName=loadtest", weight));
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知的接口: " + pair[0]);
+            }
+        }
+
+        return endpoints;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        return options;
+    }
+
+    private static Map<String, Object> summarize(List<Endpoint> endpoints, long elapsedNanos) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        double seconds = elapsedNanos / 1e9;
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            long[] latencies = sorted(endpoint.latencies);
+            long[] serviceTimes = sorted(endpoint.serviceTimes);
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("endpoint", endpoint.name);
+            result.put("requests", latencies.length);
+            result.put("errors", endpoint.errors.get());
+            result.put("throughput", latencies.length / seconds);
+            result.put("statuses", endpoint.statuses);
+            result.put("latencyMillis", percentiles(latencies));
+            result.put("serviceTimeMillis", percentiles(serviceTimes));
+            results.add(result);
+        }
+
+        summary.put("elapsedSeconds", seconds);
+        summary.put("endpoints", results);
+        return summary;
+    }
+
+    private static Map<String, Double> percentiles(long[] sortedMicros) {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (double percentile : PERCENTILES) {
+            values.put("p" + format(percentile).replace(".", ""), percentile(sortedMicros, percentile) / 1000.0);
+        }
+        values.put("max", sortedMicros.length > 0 ? sortedMicros[sortedMicros.length - 1] / 1000.0 : 0);
+        return values;
+    }
+
+    /**
+     * 最近秩法取百分位
+     */
+    private static long percentile(long[] sortedMicros, double percentile) {
+        if (sortedMicros.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sortedMicros.length);
+        return sortedMicros[Math.max(0, Math.min(rank, sortedMicros.length) - 1)];
+    }
+
+    private static long[] sorted(List<Long> values) {
+        long[] array = values.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(array);
+        return array;
+    }
+
+    private static void print(List<Endpoint> endpoints, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+
+        System.out.println("==========================================");
+        System.out.printf("%-14s %8s %7s %9s %9s %9s %9s %9s %s%n",
+                "endpoint", "requests", "errors", "req/s", "p50(ms)", "p99(ms)", "p999(ms)", "max(ms)", "statuses");
+        for (Endpoint endpoint : endpoints) {
+            long[] latencies = sorted(endpoint.latencies);
+            System.out.printf("%-14s %8d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %s%n",
+                    endpoint.name, latencies.length, endpoint.errors.get(), latencies.length / seconds,
+                    percentile(latencies, 50) / 1000.0, percentile(latencies, 99) / 1000.0,
+                    percentile(latencies, 99.9) / 1000.0,
+                    latencies.length > 0 ? latencies[latencies.length - 1] / 1000.0 : 0, endpoint.statuses);
+        }
+        System.out.println("==========================================");
+        System.out.println("延迟从计划发起时间开始计算(已做协同遗漏修正), 服务时间见输出文件");
+    }
+
+    /**
+     * 输出JSON汇总和CSV明细(每个接口一行)
+     */
+    private static void write(Path outDir, List<Endpoint> endpoints, Map<String, Object> summary, long elapsedNanos) throws IOException {
+        Files.createDirectories(outDir);
+        String name = "loadtest-" + LocalDateTime.now().format(FILE_TIME);
+
+        Path json = outDir.resolve(name + ".json");
+        Files.write(json, toJson(summary).getBytes(StandardCharsets.UTF_8));
+
+        double seconds = elapsedNanos / 1e9;
+        StringBuilder csv = new StringBuilder("endpoint,requests,errors,throughput,p50_ms,p90_ms,p99_ms,p999_ms,max_ms,"
+                + "service_p50_ms,service_p99_ms,service_p999_ms\n");
+        for (Endpoint endpoint : endpoints) {
+            long[] latencies = sorted(endpoint.latencies);
+            long[] serviceTimes = sorted(endpoint.serviceTimes);
+            csv.append(endpoint.name).append(',')
+                    .append(latencies.length).append(',')
+                    .append(endpoint.errors.get()).append(',')
+                    .append(format(latencies.length / seconds)).append(',')
+                    .append(format(percentile(latencies, 50) / 1000.0)).append(',')
+                    .append(format(percentile(latencies, 90) / 1000.0)).append(',')
+                    .append(format(percentile(latencies, 99) / 1000.0)).append(',')
+                    .append(format(percentile(latencies, 99.9) / 1000.0)).append(',')
+                    .append(format(latencies.length > 0 ? latencies[latencies.length - 1] / 1000.0 : 0)).append(',')
+                    .append(format(percentile(serviceTimes, 50) / 1000.0)).append(',')
+                    .append(format(percentile(serviceTimes, 99) / 1000.0)).append(',')
+                    .append(format(percentile(serviceTimes, 99.9) / 1000.0)).append('\n');
+        }
+
+        Path csvFile = outDir.resolve(name + ".csv");
+        Files.write(csvFile, csv.toString().getBytes(StandardCharsets.UTF_8));
+
+        System.out.println("结果已输出: " + json + ", " + csvFile);
+    }
+
+    /**
+     * 汇总只包含Map、List、数字和字符串, 直接拼接JSON, 压测工具不依赖其他库
+     */
+    private static String toJson(Object value) {
+        if (value instanceof Map) {
+            StringBuilder builder = new StringBuilder("{");
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (builder.length() > 1) {
+                    builder.append(',');
+                }
+                builder.append(toJson(String.valueOf(entry.getKey()))).append(':').append(toJson(entry.getValue()));
+            }
+            return builder.append('}').toString();
+        }
+        if (value instanceof List) {
+            StringBuilder builder = new StringBuilder("[");
+            for (Object element : (List<?>) value) {
+                if (builder.length() > 1) {
+                    builder.append(',');
+                }
+                builder.append(toJson(element));
+            }
+            return builder.append(']').toString();
+        }
+        if (value instanceof Double) {
+            return format((Double) value);
+        }
+        if (value instanceof Number || value instanceof AtomicLong) {
+            return value.toString();
+        }
+        return '"' + String.valueOf(value).replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value).replaceAll("\\.?0+$", "");
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.circularlist.lua;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 广告轮播脚本(ad_next)和点击率排行脚本(ctr_update)
+ @author lk
+ @create 2026/10/19-19:30
+ */
+class AdNextScriptTest extends EmbeddedRedisTest {
+
+    private static final String LIST = "circular:list:{ads}";
+
+    private static final String VERSION = LIST + ":version";
+
+    private static final String CHANGES = LIST + ":changes";
+
+    private static final String PACING = LIST + ":pacing";
+
+    private static final String CTR = LIST + ":ctr";
+
+    private static final String RANK = LIST + ":ctr:rank";
+
+    private static final String BUCKET = LIST + ":freq:1";
+
+    private final RedisScript<List<Object>> adNext = listScript("ad_next.lua");
+
+    private final RedisScript<String> ctrUpdate = script("ctr_update.lua", String.class);
+
+    @Test
+    void countsImpressionsForPickedAds() {
+        fill("a1", "a2", "a3");
+
+        assertEquals(Arrays.asList(ad("a3"), ad("a2"), ad("a1")), picked(next("", 3)));
+        assertEquals(Arrays.asList(ad("a3")), picked(next("", 1)));
+
+        //选中即计数展示, 点击可以直接上报
+        assertEquals(3L, redis.opsForZSet().zCard(RANK));
+        assertEquals(2.0, Double.parseDouble((String) redis.opsForHash().get(CTR, "a3:imp")), 0.01);
+        assertEquals(1.0, Double.parseDouble((String) redis.opsForHash().get(CTR, "a1:imp")), 0.01);
+        assertNotNull(ctr("a1", 0, 1));
+    }
+
+    @Test
+    void reportsAdsRemovedByBudget() {
+        fill("a1", "a2", "a3");
+        redis.opsForHash().put(PACING, "a3:budget", "1");
+        redis.opsForHash().put(PACING, "a2:budget", "0");
+
+        List<?> result = next("", 2);
+
+        //a3用完最后一次预算, 展示后移出; a2预算已用完, 直接移出
+        assertEquals(Arrays.asList(ad("a3"), ad("a1")), picked(result));
+        assertEquals(Arrays.asList(ad("a3"), ad("a2")), result.get(1));
+        assertEquals(Arrays.asList(ad("a1")), redis.opsForList().range(LIST, 0, -1));
+    }
+
+    @Test
+    void recordsRemovalsAsChanges() {
+        RedisScript<List<Object>> mutate = listScript("list_mutate.lua");
+        RedisScript<List<Object>> changes = listScript("list_changes.lua");
+
+        redis.execute(mutate, keys(LIST, VERSION, CHANGES), "init", "100", ad("a1"), ad("a2"), ad("a3"));
+        long initVersion = Long.parseLong(redis.opsForValue().get(VERSION));
+        redis.opsForHash().put(PACING, "a3:budget", "1");
+        redis.opsForHash().put(PACING, "a2:budget", "0");
+
+        next("", 2);
+
+        //每个移出的广告一个版本号, 增量同步能看到这两次移除
+        assertEquals(initVersion + 2, Long.parseLong(redis.opsForValue().get(VERSION)));
+        List<?> delta = redis.execute(changes, keys(LIST, VERSION, CHANGES), String.valueOf(initVersion), "100");
+        assertEquals(Arrays.asList(String.valueOf(initVersion + 2), "delta",
+                String.valueOf(initVersion + 1), "remove", ad("a3"),
+                String.valueOf(initVersion + 2), "remove", ad("a2")), delta);
+    }
+
+    @Test
+    void seedsVersionFromServerTime() {
+        fill("a1");
+        redis.opsForHash().put(PACING, "a1:budget", "0");
+
+        long before = System.currentTimeMillis() * 1000;
+        next("", 1);
+
+        long version = Long.parseLong(redis.opsForValue().get(VERSION));
+        assertTrue(version > before - 60_000_000L && version < before + 60_000_000L);
+        assertEquals(-1L, redis.getExpire(VERSION));
+    }
+
+    @Test
+    void skipsAdsOverFrequencyCap() {
+        fill("a1", "a2");
+
+        List<String> served = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            served.addAll(picked(next("u1", 1)));
+        }
+
+        //每个广告最多展示2次
+        assertEquals(4, served.size());
+        assertEquals(2, served.stream().filter(ad("a1")::equals).count());
+        assertTrue(picked(next("u1", 1)).isEmpty());
+        assertEquals(1, picked(next("u2", 1)).size());
+    }
+
+    @Test
+    void waitsForPacingTokens() {
+        fill("a1");
+        redis.opsForHash().put(PACING, "a1:rate", "0.001");
+        redis.opsForHash().put(PACING, "a1:burst", "1");
+
+        assertEquals(1, picked(next("", 1)).size());
+        assertTrue(picked(next("", 1)).isEmpty());
+        assertEquals(Arrays.asList(ad("a1")), redis.opsForList().range(LIST, 0, -1));
+    }
+
+    @Test
+    void picksDistinctAdsWhenRequested() {
+        fill("a1", "a2");
+
+        //列表中只有2个广告, 去重时第3个广告位为空, 重复的广告不扣减令牌和频控
+        assertEquals(Arrays.asList(ad("a2"), ad("a1")), picked(next("u1", 3, true)));
+        assertEquals(1L, Math.round(Double.parseDouble((String) redis.opsForHash().get(CTR, "a2:imp"))));
+        assertEquals(Arrays.asList(ad("a2"), ad("a1"), ad("a2")), picked(next("", 3, false)));
+    }
+
+    @Test
+    void rejectsClicksWithoutImpressions() {
+        assertNull(ctr("unknown", 0, 1));
+        assertFalse(redis.hasKey(CTR));
+        assertFalse(redis.hasKey(RANK));
+
+        assertNotNull(ctr("a1", 1, 0));
+        double afterClick = Double.parseDouble(ctr("a1", 0, 1));
+        assertTrue(afterClick > 0.02);
+        assertEquals(1L, redis.opsForZSet().zCard(RANK));
+
+        //已移除广告的计数被删除后, 点击再次被拒绝
+        redis.delete(Arrays.asList(CTR, RANK));
+        assertNull(ctr("a1", 0, 1));
+    }
+
+    private void fill(String... adIds) {
+        for (String adId : adIds) {
+            redis.opsForList().rightPush(LIST, ad(adId));
+        }
+    }
+
+    private List<?> next(String userId, int count) {
+        return next(userId, count, false);
+    }
+
+    private List<?> next(String userId, int count, boolean distinct) {
+        //变更日志长度100; 频控参数: 最多2次, 宽度1024, 深度4, 桶过期60秒; 半衰期1小时, 先验 2 / 98, 普通轮播
+        return redis.execute(adNext, keys(LIST, VERSION, CHANGES, PACING, CTR, RANK, BUCKET),
+                "100", userId, "2", "1024", "4", "60", String.valueOf(count), "3600000", "2", "98", "0", "1", "0.1",
+                distinct ? "1" : "0");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> picked(List<?> result) {
+        return (List<String>) result.get(0);
+    }
+
+    private String ctr(String adId, int impressions, int clicks) {
+        return redis.execute(ctrUpdate, keys(CTR, RANK), "3600000", "2", "98", adId, String.valueOf(impressions), String.valueOf(clicks));
+    }
+
+    private static String ad(String adId) {
+        return "{\"adId\":\"" + adId + "\"}";
+    }
+}
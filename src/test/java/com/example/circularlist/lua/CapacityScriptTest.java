@@ -0,0 +1,110 @@
+package com.example.circularlist.lua;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * 集群容量脚本(capacity_reserve / capacity_release / capacity_adjust)
+ @author lk
+ @create 2026/10/19-18:20
+ */
+class CapacityScriptTest extends EmbeddedRedisTest {
+
+    private static final String KEY = "circular:list:{workers}:capacity";
+
+    private static final String LEASE_TTL = "60000";
+
+    private static final String LEASE_BUCKET = "1000";
+
+    private final RedisScript<List<Object>> reserve = listScript("capacity_reserve.lua");
+
+    private final RedisScript<Long> release = script("capacity_release.lua", Long.class);
+
+    private final RedisScript<Long> adjust = script("capacity_adjust.lua", Long.class);
+
+    @Test
+    void reserveWithoutRecordIsUnlimited() {
+        List<?> result = redis.execute(reserve, keys(KEY), "10", LEASE_TTL, LEASE_BUCKET);
+
+        assertEquals(-1, number(result, 0));
+        assertFalse(redis.hasKey(KEY));
+    }
+
+    @Test
+    void reserveGrantsRemainderAndRejectsWhenExhausted() {
+        redis.execute(adjust, keys(KEY), "set", "10");
+
+        List<?> first = redis.execute(reserve, keys(KEY), "7", LEASE_TTL, LEASE_BUCKET);
+        assertEquals(7, number(first, 0));
+        assertEquals(3, number(first, 1));
+
+        List<?> second = redis.execute(reserve, keys(KEY), "7", LEASE_TTL, LEASE_BUCKET);
+        assertEquals(3, number(second, 0));
+        assertEquals(0, number(second, 1));
+
+        List<?> third = redis.execute(reserve, keys(KEY), "1", LEASE_TTL, LEASE_BUCKET);
+        assertEquals(0, number(third, 0));
+    }
+
+    @Test
+    void releaseReturnsCapacityAndNeverGoesBelowZeroUsed() {
+        redis.execute(adjust, keys(KEY), "set", "10");
+        redis.execute(reserve, keys(KEY), "6", LEASE_TTL, LEASE_BUCKET);
+
+        assertEquals(8, redis.execute(release, keys(KEY), "4", LEASE_TTL));
+        assertEquals(10, redis.execute(release, keys(KEY), "100", LEASE_TTL));
+
+        List<?> result = redis.execute(reserve, keys(KEY), "100", LEASE_TTL, LEASE_BUCKET);
+        assertEquals(10, number(result, 0));
+    }
+
+    @Test
+    void releaseWithoutRecordIsNoop() {
+        assertEquals(-1, redis.execute(release, keys(KEY), "5", LEASE_TTL));
+        assertFalse(redis.hasKey(KEY));
+    }
+
+    @Test
+    void expiredLeasesReturnCapacity() throws InterruptedException {
+        redis.execute(adjust, keys(KEY), "set", "5");
+
+        assertEquals(5, number(redis.execute(reserve, keys(KEY), "5", "300", "50"), 0));
+        assertEquals(0, number(redis.execute(reserve, keys(KEY), "1", "300", "50"), 0));
+
+        Thread.sleep(400);
+
+        assertEquals(5, number(redis.execute(reserve, keys(KEY), "5", "300", "50"), 0));
+    }
+
+    @Test
+    void adjustWithoutRecordDoesNotCreateOne() {
+        assertEquals(-1, redis.execute(adjust, keys(KEY), "add", "-50"));
+        assertFalse(redis.hasKey(KEY));
+
+        List<?> result = redis.execute(reserve, keys(KEY), "10", LEASE_TTL, LEASE_BUCKET);
+        assertEquals(-1, number(result, 0));
+    }
+
+    @Test
+    void adjustClampsTotalAtZero() {
+        redis.execute(adjust, keys(KEY), "set", "10");
+
+        assertEquals(0, redis.execute(adjust, keys(KEY), "add", "-50"));
+        assertEquals(20, redis.execute(adjust, keys(KEY), "add", "20"));
+    }
+
+    @Test
+    void setClearsReservations() {
+        redis.execute(adjust, keys(KEY), "set", "10");
+        redis.execute(reserve, keys(KEY), "10", LEASE_TTL, LEASE_BUCKET);
+
+        redis.execute(adjust, keys(KEY), "set", "4");
+
+        assertEquals(4, number(redis.execute(reserve, keys(KEY), "10", LEASE_TTL, LEASE_BUCKET), 0));
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.circularlist.lua;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lua脚本集成测试基类
+ * 每个测试类启动一个嵌入式Redis(6.2), 直接执行src/main/resources/lua下的脚本, 每个测试前清空数据
+ @author lk
+ @create 2026/10/19-18:20
+ */
+public abstract class EmbeddedRedisTest {
+
+    private static RedisServer server;
+
+    private static LettuceConnectionFactory factory;
+
+    protected static StringRedisTemplate redis;
+
+    /**
+     * 嵌入式Redis端口, 启动Spring上下文的测试通过@DynamicPropertySource指向它
+     */
+    protected static int port;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        port = freePort();
+        server = new RedisServer(port);
+        server.start();
+
+        factory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        factory.afterPropertiesSet();
+        redis = new StringRedisTemplate(factory);
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        factory.destroy();
+        server.stop();
+    }
+
+    @BeforeEach
+    void flush() {
+        redis.execute((RedisCallback<Void>) connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        });
+    }
+
+    /**
+     * 加载脚本
+     * @param name lua目录下的文件名
+     */
+    protected static <T> RedisScript<T> script(String name, Class<T> resultType) {
+        return RedisScript.of(new ClassPathResource("lua/" + name), resultType);
+    }
+
+    /**
+     * 加载返回多值回复的脚本
+     * @param name lua目录下的文件名
+     */
+    @SuppressWarnings("unchecked")
+    protected static RedisScript<List<Object>> listScript(String name) {
+        return script(name, (Class<List<Object>>) (Class<?>) List.class);
+    }
+
+    protected static List<String> keys(String... keys) {
+        return Arrays.asList(keys);
+    }
+
+    /**
+     * 列表脚本返回的数值
+     */
+    protected static long number(List<?> result, int index) {
+        return ((Number) result.get(index)).longValue();
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.circularlist.lua;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 列表成员变更和增量同步脚本(list_mutate / list_changes)
+ @author lk
+ @create 2026/10/19-20:30
+ */
+class ListChangesScriptTest extends EmbeddedRedisTest {
+
+    private static final String LIST = "circular:list:{workers}";
+
+    private static final String VERSION = LIST + ":version";
+
+    private static final String CHANGES = LIST + ":changes";
+
+    private final RedisScript<List<Object>> mutate = listScript("list_mutate.lua");
+
+    private final RedisScript<List<Object>> changes = listScript("list_changes.lua");
+
+    @Test
+    void returnsDeltaSinceKnownVersion() {
+        long v1 = mutate("init", "a", "b");
+        long v2 = mutate("add", "c");
+        long v3 = mutate("remove", "a");
+
+        assertEquals(v1 + 1, v2);
+        assertEquals(v2 + 1, v3);
+        assertEquals(Arrays.asList(String.valueOf(v3), "delta",
+                String.valueOf(v2), "add", "c",
+                String.valueOf(v3), "remove", "a"), changes(v1, 100));
+
+        //已是最新版本
+        assertEquals(Arrays.asList(String.valueOf(v3), "delta"), changes(v3, 100));
+    }
+
+    @Test
+    void noOpMutationsKeepVersion() {
+        long v1 = mutate("init", "a");
+        assertEquals(v1, mutate("remove", "missing"));
+        assertEquals(v1, mutate("restore", "x"));
+        assertEquals(Arrays.asList(String.valueOf(v1), "delta"), changes(v1, 100));
+    }
+
+    @Test
+    void fallsBackToSnapshot() {
+        long v1 = mutate("init", "a", "b");
+        for (int i = 0; i < 5; i++) {
+            mutate("add", "n" + i);
+        }
+        List<String> snapshot = Arrays.asList("a", "b", "n0", "n1", "n2", "n3", "n4");
+
+        //首次同步
+        assertSnapshot(changes(0, 100), snapshot);
+        //增量超过上限
+        assertSnapshot(changes(v1, 3), snapshot);
+
+        //日志被裁剪
+        redis.opsForStream().trim(CHANGES, 2);
+        assertSnapshot(changes(v1, 100), snapshot);
+        assertEquals("delta", changes(v1 + 3, 100).get(1));
+
+        //跨过init
+        long v2 = mutate("init", "z");
+        assertSnapshot(changes(v2 - 1, 100), Arrays.asList("z"));
+
+        //版本号来自另一条历史(数据丢失后客户端持有更大的版本号)
+        assertSnapshot(changes(v2 + 10, 100), Arrays.asList("z"));
+    }
+
+    @Test
+    void restoreOnlyFillsLostLists() {
+        long restored = mutate("restore", "a", "b");
+        assertEquals(Arrays.asList("a", "b"), redis.opsForList().range(LIST, 0, -1));
+        assertSnapshot(changes(restored - 1, 100), Arrays.asList("a", "b"));
+
+        //被移空的列表保留版本号, 不再回填
+        mutate("remove", "a");
+        long emptied = mutate("remove", "b");
+        assertEquals(emptied, mutate("restore", "a", "b"));
+        assertEquals(0L, redis.opsForList().size(LIST));
+    }
+
+    @Test
+    void seedsVersionFromServerTimeAndPersistsTombstone() {
+        long before = System.currentTimeMillis() * 1000;
+        long version = mutate("init", "a");
+        assertTrue(version > before - 60_000_000L && version < before + 60_000_000L);
+
+        //淘汰后的墓碑带有过期时间, 重新创建后不再过期, 版本号继续递增
+        redis.delete(LIST);
+        redis.expire(VERSION, 60, TimeUnit.SECONDS);
+        assertEquals(version + 1, mutate("init", "b"));
+        assertEquals(-1L, redis.getExpire(VERSION));
+    }
+
+    private long mutate(String op, String... items) {
+        String[] args = new String[items.length + 2];
+        args[0] = op;
+        args[1] = "100";
+        System.arraycopy(items, 0, args, 2, items.length);
+        return number(redis.execute(mutate, keys(LIST, VERSION, CHANGES), (Object[]) args), 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> changes(long since, int maxDelta) {
+        return (List<String>) (List<?>) redis.execute(changes, keys(LIST, VERSION, CHANGES), String.valueOf(since), String.valueOf(maxDelta));
+    }
+
+    private static void assertSnapshot(List<String> result, List<String> items) {
+        assertEquals("snapshot", result.get(1));
+        assertEquals(items, result.subList(2, result.size()));
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.circularlist.lua;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 列表登记脚本(registry_reserve / registry_unregister)
+ @author lk
+ @create 2026/10/19-18:40
+ */
+class RegistryScriptTest extends EmbeddedRedisTest {
+
+    private static final String NAMESPACE = "circular:registry:{ads}";
+
+    private static final String ACCESS = NAMESPACE + ":access";
+
+    private static final String UNLIMITED = String.valueOf(Long.MAX_VALUE);
+
+    private final RedisScript<List<Object>> reserve = listScript("registry_reserve.lua");
+
+    private final RedisScript<Long> unregister = script("registry_unregister.lua", Long.class);
+
+    @Test
+    void replaceSetsUsageAndIncrementAdjustsIt() {
+        assertEquals(1, number(reserve("ads:a", 10, 100, true), 0));
+        assertEquals(1, number(reserve("ads:a", 2, 20, false), 0));
+        assertEquals(1, number(reserve("ads:a", -3, -30, false), 0));
+
+        assertEquals("1", field("lists"));
+        assertEquals("9", field("items"));
+        assertEquals("90", field("bytes"));
+        assertEquals("9", field("ads:a:items"));
+
+        //重新初始化按新值替换
+        reserve("ads:a", 4, 40, true);
+        assertEquals("4", field("items"));
+        assertEquals("40", field("bytes"));
+    }
+
+    @Test
+    void rejectsGrowthBeyondQuota() {
+        assertEquals(1, number(redis.execute(reserve, keys(NAMESPACE, ACCESS), "ads:a", "5", "50", "1", "1", "10", "1000", "1"), 0));
+
+        List<?> lists = redis.execute(reserve, keys(NAMESPACE, ACCESS), "ads:b", "1", "10", "1", "1", "10", "1000", "1");
+        assertEquals(0, number(lists, 0));
+        assertEquals("lists", lists.get(1));
+
+        List<?> items = redis.execute(reserve, keys(NAMESPACE, ACCESS), "ads:a", "6", "60", "0", "1", "10", "1000", "1");
+        assertEquals(0, number(items, 0));
+        assertEquals("items", items.get(1));
+
+        //缩小总是允许
+        assertEquals(1, number(redis.execute(reserve, keys(NAMESPACE, ACCESS), "ads:a", "-1", "-10", "0", "1", "1", "1", "1"), 0));
+        assertEquals("4", field("items"));
+    }
+
+    @Test
+    void releaseOfUnregisteredListDoesNotRegisterIt() {
+        reserve("ads:a", -1, -10, false);
+
+        assertNull(field("ads:a:items"));
+        assertNull(field("lists"));
+    }
+
+    @Test
+    void usageNeverGoesNegative() {
+        reserve("ads:a", 2, 20, true);
+        reserve("ads:a", -5, -50, false);
+
+        assertEquals("0", field("ads:a:items"));
+        assertEquals("0", field("items"));
+        assertEquals("0", field("bytes"));
+    }
+
+    @Test
+    void unregisterSubtractsListUsage() {
+        reserve("ads:a", 3, 30, true);
+        reserve("ads:b", 5, 50, true);
+
+        assertEquals(1, redis.execute(unregister, keys(NAMESPACE, ACCESS), "ads:a", ""));
+        assertEquals(0, redis.execute(unregister, keys(NAMESPACE, ACCESS), "ads:a", ""));
+
+        assertEquals("1", field("lists"));
+        assertEquals("5", field("items"));
+        assertEquals("50", field("bytes"));
+        assertNull(redis.opsForZSet().score(ACCESS, "ads:a"));
+    }
+
+    @Test
+    void unregisterIfIdleKeepsRecentlyAccessedList() {
+        redis.execute(reserve, keys(NAMESPACE, ACCESS), "ads:a", "3", "30", "1", UNLIMITED, UNLIMITED, UNLIMITED, "2000");
+
+        assertEquals(0, redis.execute(unregister, keys(NAMESPACE, ACCESS), "ads:a", "1000"));
+        assertEquals(1, redis.execute(unregister, keys(NAMESPACE, ACCESS), "ads:a", "3000"));
+        assertEquals("0", field("lists"));
+    }
+
+    private List<?> reserve(String listName, long items, long bytes, boolean replace) {
+        return redis.execute(reserve, keys(NAMESPACE, ACCESS), listName, String.valueOf(items), String.valueOf(bytes),
+                replace ? "1" : "0", UNLIMITED, UNLIMITED, UNLIMITED, String.valueOf(System.currentTimeMillis()));
+    }
+
+    private String field(String name) {
+        Object value = redis.opsForHash().get(NAMESPACE, name);
+        return value != null ? value.toString() : null;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.circularlist.lua;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * 洗牌轮询脚本(shuffle_next)
+ @author lk
+ @create 2026/10/19-19:10
+ */
+class ShuffleScriptTest extends EmbeddedRedisTest {
+
+    private static final String LIST = "circular:list:{workers}";
+
+    private static final String CURSOR = LIST + ":shuffle:cursor";
+
+    private static final String VERSION = LIST + ":version";
+
+    private static final String INDEX = LIST + ":shuffle:index";
+
+    private final RedisScript<List<Object>> shuffle = listScript("shuffle_next.lua");
+
+    @Test
+    void everyEpochIsAPermutation() {
+        for (int n : new int[]{1, 2, 3, 4, 5, 16, 17, 100}) {
+            redis.delete(keys(LIST, CURSOR, INDEX));
+            List<String> members = fill(n);
+
+            List<String> previous = null;
+            for (int epoch = 0; epoch < 3; epoch++) {
+                List<String> cycle = next(n);
+                assertEquals(n, cycle.size());
+                assertEquals(new HashSet<>(members), new HashSet<>(cycle), "n=" + n + ", epoch=" + epoch);
+                if (n >= 16 && previous != null) {
+                    assertNotEquals(previous, cycle, "每一轮的排列不同");
+                }
+                previous = cycle;
+            }
+        }
+    }
+
+    @Test
+    void batchesSpanningEpochsStayPermutations() {
+        List<String> members = fill(10);
+
+        //每批7个, 跨越轮次边界
+        List<String> all = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            all.addAll(next(7));
+        }
+
+        for (int epoch = 0; epoch < 7; epoch++) {
+            assertEquals(new HashSet<>(members), new HashSet<>(all.subList(epoch * 10, epoch * 10 + 10)));
+        }
+    }
+
+    @Test
+    void rebuildsIndexWhenMembershipChanges() {
+        fill(5);
+        next(5);
+        assertEquals("5", redis.opsForHash().get(INDEX, "n"));
+
+        //版本号变化: 替换一个成员, 长度不变
+        redis.opsForList().set(LIST, 0, "replaced");
+        redis.opsForValue().increment(VERSION);
+        List<String> cycle = next(5);
+        assertEquals(5, new HashSet<>(cycle).size());
+        assertEquals(true, cycle.contains("replaced"));
+
+        //没有递增版本号的移除由长度检查发现
+        //游标为10, 补齐到新长度的轮次边界(12)后取一整轮
+        redis.opsForList().remove(LIST, 1, "replaced");
+        next(2);
+        cycle = next(4);
+        assertEquals(4, new HashSet<>(cycle).size());
+        assertEquals(false, cycle.contains("replaced"));
+        assertEquals("4", redis.opsForHash().get(INDEX, "n"));
+    }
+
+    @Test
+    void rotationDoesNotInvalidateIndex() {
+        List<String> members = fill(8);
+        next(3);
+
+        redis.opsForList().rightPopAndLeftPush(LIST, LIST);
+
+        //游标停在轮中间, 补齐本轮后下一轮仍是完整排列
+        next(5);
+        assertEquals(new HashSet<>(members), new HashSet<>(next(8)));
+    }
+
+    private List<String> fill(int n) {
+        List<String> members = IntStream.range(0, n).mapToObj(i -> "m" + i).collect(Collectors.toList());
+        redis.opsForList().rightPushAll(LIST, members);
+        return members;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> next(int count) {
+        return (List<String>) (List<?>) redis.execute(shuffle, keys(LIST, CURSOR, VERSION, INDEX), "seed", String.valueOf(count));
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.circularlist.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 本地预取缓冲
+ @author lk
+ @create 2026/10/19-21:00
+ */
+class PrefetchBufferTest {
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final List<Runnable> pending = new ArrayList<>();
+
+    /**
+     * 加载过程中(Redis往返期间)执行的动作, 模拟并发的addWorker/removeWorker
+     */
+    private Runnable duringLoad = () -> { };
+
+    private List<Integer> load(int count) {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            items.add(next.getAndIncrement());
+        }
+        duringLoad.run();
+        return items;
+    }
+
+    @Test
+    void refillInFlightIsDiscardedAfterInvalidate() {
+        PrefetchBuffer<Integer> buffer = new PrefetchBuffer<>("test", this::load, pending::add, 8, 4, 60_000);
+        drainToLowWater(buffer);
+
+        //补充加载返回前列表成员变化, 加载结果(8..12)被丢弃
+        duringLoad = buffer::invalidate;
+        pending.remove(0).run();
+        duringLoad = () -> { };
+
+        assertEquals(0, buffer.size());
+        assertEquals(13, buffer.poll());
+    }
+
+    @Test
+    void syncLoadInFlightKeepsOnlyReturnedItem() {
+        PrefetchBuffer<Integer> buffer = new PrefetchBuffer<>("test", this::load, pending::add, 8, 4, 60_000);
+
+        duringLoad = buffer::invalidate;
+        assertEquals(0, buffer.poll());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void refillPublishesWhenNotInvalidated() {
+        PrefetchBuffer<Integer> buffer = new PrefetchBuffer<>("test", this::load, pending::add, 8, 4, 60_000);
+
+        drainToLowWater(buffer);
+        pending.remove(0).run();
+
+        //剩余3个, 补充5个到容量
+        assertEquals(8, buffer.size());
+    }
+
+    /**
+     * 首次同步加载时每批数量翻倍为8, 取出5个后剩余3个低于低水位, 提交一次异步补充
+     */
+    private static void drainToLowWater(PrefetchBuffer<Integer> buffer) {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, buffer.poll());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.circularlist.service;
+
+import com.example.circularlist.lua.EmbeddedRedisTest;
+import com.example.circularlist.model.WorkerNode;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 流式分配任务(NDJSON)
+ @author lk
+ @create 2026/10/19-20:10
+ */
+@SpringBootTest(properties = {"circular-list.ingest.batch-size=4", "circular-list.warm-up.enabled=false"})
+class TaskIngestTest extends EmbeddedRedisTest {
+
+    @Autowired
+    private LoadBalancerService loadBalancerService;
+
+    @DynamicPropertySource
+    static void redisProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.redis.port", () -> port);
+    }
+
+    @Test
+    void streamsMoreTasksThanCapacity() throws Exception {
+        //2个节点, 每个剩余容量3, 集群容量6
+        List<WorkerNode> workers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            workers.add(WorkerNode.builder().nodeId("node-" + i).status("online").currentLoad(0).maxLoad(3).build());
+        }
+        loadBalancerService.initWorkers(workers);
+
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            //未知字段不中断流
+            body.append("{\"taskId\":\"task-").append(i).append("\",\"taskType\":\"compute\",\"extra\":").append(i).append("}\n");
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Map<String, Object> summary = loadBalancerService.ingestTasks(
+                new ByteArrayInputStream(body.toString().getBytes(StandardCharsets.UTF_8)), out);
+
+        assertEquals("done", summary.get("status"));
+        assertEquals(50L, summary.get("received"));
+        assertEquals(50L, summary.get("assigned"));
+        assertEquals(0L, summary.get("rejected"));
+        assertEquals(51, out.toString(StandardCharsets.UTF_8.name()).split("\n").length);
+
+        //每批的预留在写出后归还
+        Map<String, Object> capacity = loadBalancerService.getCapacityStats();
+        assertEquals(0L, capacity.get("used"));
+        assertEquals(6L, capacity.get("available"));
+    }
+}